@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Continuous analysis of one position on a background thread.
+ *
+ * Each completed iteration is published as an immutable {@link Snapshot}. Only the newest
+ * snapshot is kept, and the UI polls it at its own pace, so a fast search can never flood
+ * the event dispatch thread; intermediate iterations are simply coalesced away.
+ */
+public class Analyzer {
+
+    /**
+     * The state of the analysis after one iteration, ready for display.
+     */
+    static class Snapshot {
+        final String fen;
+        final int depth;
+        final long nodes;
+        final long elapsedMillis;
+        /** One entry per line, best first: score (white's point of view) and the PV in SAN. */
+        final int[] scores;
+        final String[] lines;
+
+        Snapshot(String fen, int depth, long nodes, long elapsedMillis, int[] scores, String[] lines) {
+            this.fen = fen;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.elapsedMillis = elapsedMillis;
+            this.scores = scores;
+            this.lines = lines;
+        }
+
+        long nodesPerSecond() {
+            return elapsedMillis == 0 ? 0 : nodes * 1000 / elapsedMillis;
+        }
+    }
+
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+    private Search search;
+    private Thread worker;
+
+    /**
+     * Starts analysing {@code position}, replacing any analysis already running.
+     * @param position Copied, so the caller may keep playing on it.
+     * @param multiPv Number of best lines to keep.
+     */
+    synchronized void analyze(ChessMain.ChessGame position, int multiPv) {
+        stop();
+        ChessMain.ChessGame root = position.deepCopy();
+        String fen = root.toFen();
+        boolean whiteToMove = root.toMove.equals("white");
+        Search s = new Search();
+        search = s;
+        worker = new Thread(() -> s.search(root, Search.Limits.infinite(), multiPv,
+                result -> latest.set(toSnapshot(root, fen, whiteToMove, result))), "chess-analysis");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.NORM_PRIORITY - 1);
+        worker.start();
+    }
+
+    /**
+     * Stops the running analysis, if any. Its last snapshot stays available.
+     */
+    synchronized void stop() {
+        if (search != null) {
+            search.stop();
+            search = null;
+            worker = null;
+        }
+    }
+
+    synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    /**
+     * @return The newest snapshot not yet taken, or null if nothing changed since the last call.
+     */
+    Snapshot poll() {
+        return latest.getAndSet(null);
+    }
+
+    private static Snapshot toSnapshot(ChessMain.ChessGame root, String fen, boolean whiteToMove, Search.Result result) {
+        int n = result.lines.size();
+        int[] scores = new int[n];
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i++) {
+            Search.Line line = result.lines.get(i);
+            scores[i] = whiteToMove ? line.score : -line.score;
+            lines[i] = pvToSan(root, line.pv);
+        }
+        return new Snapshot(fen, result.depth, result.nodes, result.elapsedMillis, scores, lines);
+    }
+
+    /**
+     * Renders a principal variation as numbered SAN, e.g. "12. Nf3 Nc6 13. Bb5" or "12... Nc6 13. Bb5".
+     */
+    static String pvToSan(ChessMain.ChessGame root, java.util.List<int[][]> pv) {
+        ChessMain.ChessGame g = root.deepCopy();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pv.size(); i++) {
+            int[][] mv = pv.get(i);
+            boolean white = g.toMove.equals("white");
+            if (white) {
+                sb.append(g.fullmoveNumber).append(". ");
+            } else if (i == 0) {
+                sb.append(g.fullmoveNumber).append("... ");
+            }
+            sb.append(San.toSan(g, mv[0][0], mv[0][1], mv[1][0], mv[1][1], 'q')).append(' ');
+            g.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Formats a white-relative score for display: "+0.35", "-1.20" or "#3" / "#-2" for mates.
+     */
+    static String formatScore(int whiteCp) {
+        if (Math.abs(whiteCp) >= Search.MATE_SCORE - Search.MAX_PLY) {
+            int plies = Search.MATE_SCORE - Math.abs(whiteCp);
+            return (whiteCp > 0 ? "#" : "#-") + (plies + 1) / 2;
+        }
+        return String.format(java.util.Locale.ROOT, "%+.2f", whiteCp / 100.0);
+    }
+}
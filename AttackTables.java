@@ -0,0 +1,164 @@
+/**
+ * Per-square move and attack tables, built once when the class loads.
+ *
+ * Squares are numbered {@code x * 8 + y} as in {@link Zobrist}, with x the row from
+ * black's side. A generator walks a short precomputed array instead of applying
+ * offsets and bounds-checking every step, and attack probes look outward from the
+ * target square instead of generating the opponent's moves.
+ */
+final class AttackTables {
+
+    /** Ray directions: the first four are orthogonal (rook), the last four diagonal (bishop). */
+    static final int[][] DIRECTIONS = {
+        {1, 0}, {-1, 0}, {0, 1}, {0, -1},
+        {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+
+    /** Squares a knight on each square attacks. */
+    static final int[][] KNIGHT = new int[64][];
+    /** Squares a king on each square attacks. */
+    static final int[][] KING = new int[64][];
+    /** Squares a pawn attacks diagonally, by colour (0 white, 1 black) and square. */
+    static final int[][][] PAWN = new int[2][64][];
+    /** Squares along each direction from each square, nearest first: [square][direction][step]. */
+    static final int[][][] RAYS = new int[64][8][];
+
+    static {
+        int[][] knightOffsets = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
+        for (int sq = 0; sq < 64; sq++) {
+            int x = sq >> 3, y = sq & 7;
+            KNIGHT[sq] = targets(x, y, knightOffsets);
+            KING[sq] = targets(x, y, DIRECTIONS);
+            PAWN[0][sq] = targets(x, y, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN[1][sq] = targets(x, y, new int[][]{{1, -1}, {1, 1}});
+            for (int d = 0; d < 8; d++) {
+                int dx = DIRECTIONS[d][0], dy = DIRECTIONS[d][1];
+                int n = 0;
+                while (onBoard(x + (n + 1) * dx, y + (n + 1) * dy)) n++;
+                RAYS[sq][d] = new int[n];
+                for (int i = 0; i < n; i++) {
+                    RAYS[sq][d][i] = (x + (i + 1) * dx) * 8 + y + (i + 1) * dy;
+                }
+            }
+        }
+    }
+
+    private AttackTables() {}
+
+    private static int[] targets(int x, int y, int[][] offsets) {
+        int[] tmp = new int[offsets.length];
+        int n = 0;
+        for (int[] off : offsets) {
+            if (onBoard(x + off[0], y + off[1])) {
+                tmp[n++] = (x + off[0]) * 8 + y + off[1];
+            }
+        }
+        return java.util.Arrays.copyOf(tmp, n);
+    }
+
+    private static boolean onBoard(int x, int y) {
+        return x >= 0 && x < 8 && y >= 0 && y < 8;
+    }
+
+    /**
+     * Adds the squares in {@code table} that are empty or hold an enemy of {@code color}.
+     */
+    static void addSteps(ChessMain.Piece[][] board, int[] table, String color, java.util.List<int[]> moves) {
+        for (int to : table) {
+            ChessMain.Piece p = board[to >> 3][to & 7];
+            if (p == null || !p.color.equals(color)) {
+                moves.add(new int[]{to >> 3, to & 7});
+            }
+        }
+    }
+
+    /**
+     * Adds slider moves along directions {@code from} (inclusive) to {@code to} (exclusive)
+     * of {@link #DIRECTIONS}, stopping each ray at the first piece and including it if it is an enemy.
+     */
+    static void addRays(ChessMain.Piece[][] board, int sq, int from, int to, String color, java.util.List<int[]> moves) {
+        for (int d = from; d < to; d++) {
+            for (int target : RAYS[sq][d]) {
+                ChessMain.Piece p = board[target >> 3][target & 7];
+                if (p == null) {
+                    moves.add(new int[]{target >> 3, target & 7});
+                } else {
+                    if (!p.color.equals(color)) {
+                        moves.add(new int[]{target >> 3, target & 7});
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the cheapest piece of {@code color} attacking (x, y): pawn, knight, bishop, rook,
+     * queen, then king. Sliders behind other attackers count once those are lifted off the board.
+     * @return Its square, or -1 if nothing attacks.
+     */
+    static int leastValuableAttacker(ChessMain.Piece[][] board, int x, int y, String color) {
+        int sq = x * 8 + y;
+        for (int from : PAWN[color.equals("white") ? 1 : 0][sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.Pawn && p.color.equals(color)) return from;
+        }
+        for (int from : KNIGHT[sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.Knight && p.color.equals(color)) return from;
+        }
+        int bishop = -1, rook = -1, queen = -1;
+        for (int d = 0; d < 8; d++) {
+            for (int from : RAYS[sq][d]) {
+                ChessMain.Piece p = board[from >> 3][from & 7];
+                if (p == null) continue;
+                if (p.color.equals(color)) {
+                    if (p instanceof ChessMain.Queen) queen = from;
+                    else if (d < 4 && p instanceof ChessMain.Rook) rook = from;
+                    else if (d >= 4 && p instanceof ChessMain.Bishop) bishop = from;
+                }
+                break;
+            }
+        }
+        if (bishop >= 0) return bishop;
+        if (rook >= 0) return rook;
+        if (queen >= 0) return queen;
+        for (int from : KING[sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.King && p.color.equals(color)) return from;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether a piece of {@code color} attacks square (x, y), whatever stands on it.
+     */
+    static boolean isAttacked(ChessMain.Piece[][] board, int x, int y, String color) {
+        int sq = x * 8 + y;
+        for (int from : KNIGHT[sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.Knight && p.color.equals(color)) return true;
+        }
+        for (int from : KING[sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.King && p.color.equals(color)) return true;
+        }
+        // A white pawn attacks the square from where a black pawn on it would attack, and vice versa
+        for (int from : PAWN[color.equals("white") ? 1 : 0][sq]) {
+            ChessMain.Piece p = board[from >> 3][from & 7];
+            if (p instanceof ChessMain.Pawn && p.color.equals(color)) return true;
+        }
+        for (int d = 0; d < 8; d++) {
+            for (int from : RAYS[sq][d]) {
+                ChessMain.Piece p = board[from >> 3][from & 7];
+                if (p == null) continue;
+                if (p.color.equals(color) && (p instanceof ChessMain.Queen
+                        || (d < 4 ? p instanceof ChessMain.Rook : p instanceof ChessMain.Bishop))) {
+                    return true;
+                }
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless analysis of a PGN archive.
+ *
+ * Games stream from a {@link PgnReader}; each game is replayed into positions that are
+ * searched as independent tasks on a work-stealing {@link ForkJoinPool}, each within a
+ * per-position depth/node/time budget. Finished games are written in input order as
+ * annotated PGN (eval comments, ?!/?/?? marks, accuracy tags) or as one CSV row per
+ * move. Only a bounded window of games is in flight, so archives far larger than
+ * memory are fine. A checkpoint file records how many games and output bytes are
+ * complete, and a rerun with the same arguments resumes from there. With --matetime,
+ * a mate the search sees for the side to move is handed to {@link MateSolver}, which
+ * reports the shortest one instead of the first found within the search's depth.
+ *
+ * Usage: java BatchAnalyzer input.pgn output.(pgn|csv) [--threads N] [--depth D]
+ *        [--nodes N] [--movetime MS] [--matetime MS] [--checkpoint FILE]
+ */
+public class BatchAnalyzer {
+
+    // Centipawn loss thresholds for move classification
+    static final int INACCURACY = 50;
+    static final int MISTAKE = 100;
+    static final int BLUNDER = 300;
+
+    static final int CHECKPOINT_EVERY_GAMES = 16;
+
+    private final int threads;
+    private final Search.Limits limits;
+    // Time for the mate solver per position the search finds a mate in; 0 to trust the search
+    long mateMillis;
+    // One table per pool thread, rather than 16 MB per position
+    private final ThreadLocal<MateSolver> mateSolvers = ThreadLocal.withInitial(MateSolver::new);
+
+    BatchAnalyzer(int threads, Search.Limits limits) {
+        this.threads = threads;
+        this.limits = limits;
+    }
+
+    /**
+     * Analysis of one position: the engine's verdict before the move played from it.
+     */
+    static class PositionResult {
+        int[][] bestMove;
+        String bestSan;
+        /** Centipawns for the side to move. */
+        int score;
+        int depth;
+        long nodes;
+    }
+
+    static class AnalyzedGame {
+        final long index;
+        final PgnGame pgn;
+        final PositionResult[] positions; // one per ply plus the final position
+        final String error;
+
+        AnalyzedGame(long index, PgnGame pgn, PositionResult[] positions, String error) {
+            this.index = index;
+            this.pgn = pgn;
+            this.positions = positions;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Replays a game and analyses every position in parallel, letting idle workers
+     * steal positions from other games.
+     */
+    private class GameTask extends RecursiveTask<AnalyzedGame> {
+        private static final long serialVersionUID = 1L;
+
+        final long index;
+        final PgnGame pgn;
+
+        GameTask(long index, PgnGame pgn) {
+            this.index = index;
+            this.pgn = pgn;
+        }
+
+        @Override
+        protected AnalyzedGame compute() {
+            java.util.List<ChessMain.ChessGame> positions = new ArrayList<>();
+            ChessMain.ChessGame g = pgn.startingPosition();
+            try {
+                positions.add(g.deepCopy());
+                for (String san : pgn.getMoves()) {
+                    int[] mv = San.parse(g, san);
+                    g.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+                    positions.add(g.deepCopy());
+                }
+            } catch (IllegalArgumentException e) {
+                return new AnalyzedGame(index, pgn, null, e.getMessage());
+            }
+
+            java.util.List<RecursiveTask<PositionResult>> tasks = new ArrayList<>();
+            for (ChessMain.ChessGame position : positions) {
+                tasks.add(new RecursiveTask<PositionResult>() {
+                    @Override
+                    protected PositionResult compute() {
+                        return analyse(position);
+                    }
+                });
+            }
+            invokeAll(tasks);
+            PositionResult[] results = new PositionResult[tasks.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = tasks.get(i).join();
+            }
+            return new AnalyzedGame(index, pgn, results, null);
+        }
+    }
+
+    private PositionResult analyse(ChessMain.ChessGame position) {
+        Search.Result r = new Search().search(position, limits);
+        PositionResult pr = new PositionResult();
+        pr.bestMove = r.bestMove;
+        pr.score = r.score;
+        pr.depth = r.depth;
+        pr.nodes = r.nodes;
+        if (mateMillis > 0 && r.isMate() && r.score > 0) {
+            MateSolver.Result m = mateSolvers.get().solve(position, MateSolver.DEFAULT_MAX_MOVES, mateMillis);
+            int plies = 2 * m.mateIn - 1;
+            if (m.isMate() && Search.MATE_SCORE - plies >= r.score) {
+                pr.bestMove = m.line.get(0);
+                pr.score = Search.MATE_SCORE - plies;
+            }
+        }
+        if (pr.bestMove != null) {
+            pr.bestSan = San.toSan(position, pr.bestMove[0][0], pr.bestMove[0][1], pr.bestMove[1][0], pr.bestMove[1][1], 'q');
+        }
+        return pr;
+    }
+
+    /**
+     * Streams {@code input} through the pool into {@code output}, resuming from {@code checkpoint} if present.
+     */
+    void run(File input, File output, File checkpoint) throws IOException, InterruptedException {
+        boolean csv = output.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        long skipGames = 0;
+        long outputBytes = 0;
+        if (checkpoint.exists() && output.exists()) {
+            Properties p = new Properties();
+            try (Reader r = new FileReader(checkpoint)) {
+                p.load(r);
+            }
+            skipGames = Long.parseLong(p.getProperty("games", "0"));
+            outputBytes = Long.parseLong(p.getProperty("bytes", "0"));
+            System.err.println("Resuming after " + skipGames + " games");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw")) {
+            // Drop anything written after the last checkpoint
+            raf.setLength(outputBytes);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(output, true), outputBytes);
+        Writer out = new BufferedWriter(new OutputStreamWriter(counter, "ISO-8859-1"));
+        PgnWriter pgnOut = new PgnWriter(out);
+        if (csv && outputBytes == 0) {
+            out.write("game,ply,move,eval_cp,best_move,best_eval_cp,loss_cp,class\n");
+        }
+
+        ArrayDeque<ForkJoinTask<AnalyzedGame>> inFlight = new ArrayDeque<>();
+        int window = threads * 2;
+        long index = 0;
+        long done = skipGames;
+        long started = System.nanoTime();
+        try (PgnReader reader = PgnReader.open(input)) {
+            PgnGame pgn;
+            while ((pgn = reader.next()) != null) {
+                if (index++ < skipGames) continue;
+                inFlight.add(pool.submit(new GameTask(index - 1, pgn)));
+                while (inFlight.size() >= window || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+                    write(inFlight.poll().join(), csv, out, pgnOut);
+                    if (++done % CHECKPOINT_EVERY_GAMES == 0) {
+                        out.flush();
+                        writeCheckpoint(checkpoint, done, counter.count);
+                        double secs = (System.nanoTime() - started) / 1e9;
+                        System.err.printf("%d games analysed (%.1f games/s)%n", done, (done - skipGames) / secs);
+                    }
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll().join(), csv, out, pgnOut);
+                done++;
+            }
+        } finally {
+            out.flush();
+            out.close();
+            pool.shutdown();
+        }
+        writeCheckpoint(checkpoint, done, counter.count);
+        System.err.println("Finished: " + done + " games");
+    }
+
+    private static void writeCheckpoint(File checkpoint, long games, long bytes) throws IOException {
+        File tmp = new File(checkpoint.getPath() + ".tmp");
+        try (Writer w = new FileWriter(tmp)) {
+            w.write("games=" + games + "\nbytes=" + bytes + "\n");
+        }
+        Files.move(tmp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void write(AnalyzedGame a, boolean csv, Writer out, PgnWriter pgnOut) throws IOException {
+        if (a.error != null) {
+            System.err.println("Game " + (a.index + 1) + " skipped: " + a.error);
+            if (!csv) {
+                pgnOut.write(a.pgn);
+            }
+            return;
+        }
+        PgnGame pgn = a.pgn;
+        double[] accuracySum = new double[2];
+        int[] accuracyCount = new int[2];
+        java.util.List<String> moves = pgn.getMoves();
+        boolean whiteFirst = !pgn.startingPosition().toMove.equals("black");
+        for (int ply = 0; ply < moves.size(); ply++) {
+            PositionResult before = a.positions[ply];
+            PositionResult after = a.positions[ply + 1];
+            boolean whiteMoved = (ply % 2 == 0) == whiteFirst;
+            // Both scores seen from the player who made the move
+            int bestCp = before.score;
+            int playedCp = -after.score;
+            String san = stripAnnotations(moves.get(ply));
+            // Playing the engine's choice loses nothing, whatever the deeper search thinks
+            int loss = san.equals(before.bestSan) ? 0 : Math.max(0, capMate(bestCp) - capMate(playedCp));
+            String mark = loss >= BLUNDER ? "??" : loss >= MISTAKE ? "?" : loss >= INACCURACY ? "?!" : "";
+            int side = whiteMoved ? 0 : 1;
+            accuracySum[side] += moveAccuracy(bestCp, playedCp);
+            accuracyCount[side]++;
+
+            int whiteCp = whiteMoved ? playedCp : -playedCp;
+            if (csv) {
+                out.write((a.index + 1) + "," + (ply + 1) + "," + san + "," + whiteCp + ","
+                        + (before.bestSan == null ? "" : before.bestSan) + ","
+                        + (whiteMoved ? bestCp : -bestCp) + "," + loss + ","
+                        + classify(loss) + "\n");
+            } else {
+                moves.set(ply, san + mark);
+                String comment = "[%eval " + formatEval(whiteCp) + "]";
+                if (!mark.isEmpty() && before.bestSan != null) {
+                    comment += " Best: " + before.bestSan;
+                }
+                pgn.setComment(ply, comment);
+            }
+        }
+        if (!csv) {
+            for (int side = 0; side < 2; side++) {
+                if (accuracyCount[side] > 0) {
+                    pgn.setTag(side == 0 ? "WhiteAccuracy" : "BlackAccuracy",
+                            String.format(Locale.ROOT, "%.1f", accuracySum[side] / accuracyCount[side]));
+                }
+            }
+            pgnOut.write(pgn);
+        }
+    }
+
+    /**
+     * Counts a forced mate as a large but finite advantage so one missed mate
+     * does not swamp a game's statistics.
+     */
+    private static int capMate(int cp) {
+        return Math.max(-1000, Math.min(1000, cp));
+    }
+
+    private static String classify(int loss) {
+        return loss >= BLUNDER ? "blunder" : loss >= MISTAKE ? "mistake" : loss >= INACCURACY ? "inaccuracy" : "ok";
+    }
+
+    private static String stripAnnotations(String san) {
+        int end = san.length();
+        while (end > 0 && (san.charAt(end - 1) == '!' || san.charAt(end - 1) == '?')) end--;
+        return san.substring(0, end);
+    }
+
+    private static String formatEval(int whiteCp) {
+        if (Math.abs(whiteCp) >= Search.MATE_SCORE - Search.MAX_PLY) {
+            int plies = Search.MATE_SCORE - Math.abs(whiteCp);
+            return (whiteCp > 0 ? "#" : "#-") + (plies + 1) / 2;
+        }
+        return String.format(Locale.ROOT, "%.2f", whiteCp / 100.0);
+    }
+
+    /**
+     * Win probability (0-100) for a centipawn score, on the usual logistic curve.
+     */
+    static double winPercent(int cp) {
+        int clamped = Math.max(-1000, Math.min(1000, cp));
+        return 50 + 50 * (2 / (1 + Math.exp(-0.00368208 * clamped)) - 1);
+    }
+
+    /**
+     * Accuracy of one move (0-100) from the drop in win probability it caused.
+     */
+    static double moveAccuracy(int bestCp, int playedCp) {
+        double drop = Math.max(0, winPercent(bestCp) - winPercent(playedCp));
+        return Math.max(0, Math.min(100, 103.1668 * Math.exp(-0.04354 * drop) - 3.1669));
+    }
+
+    /**
+     * Counts bytes so checkpoints can record exactly how much output is complete.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out, long initial) {
+            super(out);
+            this.count = initial;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java BatchAnalyzer input.pgn output.(pgn|csv) [--threads N] [--depth D]"
+                    + " [--nodes N] [--movetime MS] [--matetime MS] [--checkpoint FILE]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Search.Limits limits = Search.Limits.depth(3).millis(1000);
+        File checkpoint = new File(args[1] + ".ckpt");
+        long mateMillis = 0;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--depth": limits.depth = Integer.parseInt(args[i + 1]); break;
+                case "--nodes": limits.nodes(Long.parseLong(args[i + 1])); break;
+                case "--movetime": limits.millis(Long.parseLong(args[i + 1])); break;
+                case "--matetime": mateMillis = Long.parseLong(args[i + 1]); break;
+                case "--checkpoint": checkpoint = new File(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        BatchAnalyzer analyzer = new BatchAnalyzer(threads, limits);
+        analyzer.mateMillis = mateMillis;
+        analyzer.run(new File(args[0]), new File(args[1]), checkpoint);
+    }
+}
@@ -0,0 +1,133 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the engine, the network link and the board's painting,
+ * so UI jank, GC pauses and engine work can be lined up in one recording:
+ *
+ * <pre>java -XX:StartFlightRecording=filename=chess.jfr ChessMain</pre>
+ *
+ * Call sites allocate the event and check {@code shouldCommit()} before filling in
+ * anything costly. Without a recording that check is false and the JIT removes the
+ * allocation, so the events cost nothing when disabled. {@link MoveApplied} fires
+ * for every node the search visits, so it stays off unless the recording settings
+ * enable {@code chess.MoveApplied}.
+ */
+final class ChessEvents {
+
+    /** Bytes in a move frame on the wire: type, sequence and four coordinates. */
+    static final int MOVE_FRAME_BYTES = 1 + 4 + 4 * 4;
+
+    private ChessEvents() {
+    }
+
+    @Name("chess.Search")
+    @Label("Search")
+    @Category({"Chess", "Engine"})
+    @Description("One engine search, from the root call to its result")
+    @StackTrace(false)
+    static class SearchEvent extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Lines")
+        int multiPv;
+
+        @Label("Score")
+        @Description("Best score in centipawns, side to move's point of view")
+        int score;
+    }
+
+    @Name("chess.MoveApplied")
+    @Label("Move Applied")
+    @Category({"Chess", "Engine"})
+    @Description("ChessGame.makeMove, including search nodes")
+    @Enabled(false)
+    @StackTrace(false)
+    static class MoveApplied extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+    }
+
+    @Name("chess.MoveSent")
+    @Label("Move Sent")
+    @Category({"Chess", "Network"})
+    @Description("A move written to the peer; the duration covers the write and flush")
+    @StackTrace(false)
+    static class MoveSent extends Event {
+        @Label("Sequence")
+        int seq;
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+    }
+
+    @Name("chess.MoveReceived")
+    @Label("Move Received")
+    @Category({"Chess", "Network"})
+    @StackTrace(false)
+    static class MoveReceived extends Event {
+        @Label("Sequence")
+        int seq;
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+    }
+
+    @Name("chess.MoveAcknowledged")
+    @Label("Move Acknowledged")
+    @Category({"Chess", "Network"})
+    @Description("The peer confirmed applying one of our moves")
+    @StackTrace(false)
+    static class MoveAcknowledged extends Event {
+        @Label("Sequence")
+        int seq;
+
+        @Label("Relay Latency")
+        @Timespan(Timespan.MICROSECONDS)
+        long relayMicros;
+    }
+
+    @Name("chess.AnimationFrame")
+    @Label("Animation Frame")
+    @Category({"Chess", "UI"})
+    @Description("One tick of the piece animation; the duration is the tick's own work")
+    @StackTrace(false)
+    static class AnimationFrame extends Event {
+        @Label("Frame Interval")
+        @Description("Time since the previous tick, ideally the 16 ms timer period")
+        @Timespan(Timespan.MILLISECONDS)
+        long intervalMillis;
+    }
+
+    @Name("chess.Paint")
+    @Label("Board Paint")
+    @Category({"Chess", "UI"})
+    @Description("ChessMain.paintComponent")
+    @StackTrace(false)
+    static class Paint extends Event {
+        @Label("Clip Width")
+        int clipWidth;
+
+        @Label("Clip Height")
+        int clipHeight;
+
+        @Label("Animating")
+        boolean animating;
+    }
+}
@@ -2,11 +2,13 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.*;
 import java.io.*;
 import javax.imageio.ImageIO;
 import java.net.*;
 import java.awt.geom.*;
+import java.util.concurrent.*;
 
 /**
  * Modern Chess application with beautiful UI, smooth animations, and professional design
@@ -16,11 +18,21 @@ public class ChessMain extends JPanel {
     // -----------------------------------------------------------------
     // 1) Enhanced Constants and Design Elements
     // -----------------------------------------------------------------
-    static final int TILE_SIZE = 90;
+    static final int TILE_SIZE = 90; // initial size; the board scales with the window
+    static final int MIN_TILE_SIZE = 40;
     static final int BOARD_SIZE = TILE_SIZE * 8;
     static final int SIDEBAR_WIDTH = 280;
     static final int WINDOW_HEIGHT = BOARD_SIZE + 40;
     static final int ANIMATION_DURATION = 400; // milliseconds
+    // Journals of local games live here, overridable with -Dchess.journal.dir
+    static final File JOURNAL_DIR = new File(System.getProperty("chess.journal.dir", "journal"));
+    // Position database shown in the sidebar, built with PositionDatabase; -Dchess.positionDb=<name>
+    static final String POSITION_DB = System.getProperty("chess.positionDb");
+    // How often the analysis panel picks up the newest search iteration
+    static final int ANALYSIS_REFRESH_MS = 250;
+    static final long MATE_SEARCH_MS = 10_000;
+    // -Dchess.debug.search=true adds a sidebar card with the last search's counters
+    static final boolean DEBUG_SEARCH = Boolean.getBoolean("chess.debug.search");
     
     // Modern Color Palette
     static final Color LIGHT_SQ_COLOR = new Color(240, 217, 181);
@@ -30,6 +42,8 @@ public class ChessMain extends JPanel {
     static final Color CHECK_COLOR = new Color(220, 20, 60, 150);
     static final Color SELECTED_COLOR = new Color(70, 130, 180, 150);
     static final Color HOVER_COLOR = new Color(135, 206, 235, 80);
+    static final Color PIECE_SHADOW = new Color(0, 0, 0, 30);
+    static final Color ANIMATION_GLOW = new Color(255, 255, 255, 100);
     
     // UI Colors
     static final Color SIDEBAR_BG = new Color(45, 52, 62);
@@ -42,7 +56,12 @@ public class ChessMain extends JPanel {
     // Animation and interaction
     private Point hoverSquare = null;
     private javax.swing.Timer animationTimer;
+    // Start of the previous animation tick, 0 while idle
+    private long lastAnimationFrameNanos;
     private PieceAnimation currentAnimation = null;
+    // Repaints the king square while the side to move is in check, so its highlight pulses
+    private static final int CHECK_PULSE_MS = 100;
+    private javax.swing.Timer checkPulseTimer;
     private long lastMoveTime = 0;
 
     // -----------------------------------------------------------------
@@ -50,47 +69,59 @@ public class ChessMain extends JPanel {
     // -----------------------------------------------------------------
     private static class PieceAnimation {
         Point fromSquare, toSquare;
-        Point startPixel, endPixel, currentPixel;
         Piece piece;
         long startTime;
+        boolean isBlackPerspective;
+        float progress = 0;
         boolean isComplete = false;
         
         PieceAnimation(Point from, Point to, Piece piece, boolean isBlackPerspective) {
             this.fromSquare = from;
             this.toSquare = to;
             this.piece = piece;
+            this.isBlackPerspective = isBlackPerspective;
             this.startTime = System.currentTimeMillis();
-            
-            // Calculate screen positions
-            this.startPixel = squareToPixel(from, isBlackPerspective);
-            this.endPixel = squareToPixel(to, isBlackPerspective);
-            this.currentPixel = new Point(startPixel);
         }
         
         void update() {
             long elapsed = System.currentTimeMillis() - startTime;
-            float progress = Math.min(1.0f, elapsed / (float) ANIMATION_DURATION);
+            float t = Math.min(1.0f, elapsed / (float) ANIMATION_DURATION);
             
             // Smooth easing function
-            progress = easeInOutCubic(progress);
-            
-            currentPixel.x = (int) (startPixel.x + (endPixel.x - startPixel.x) * progress);
-            currentPixel.y = (int) (startPixel.y + (endPixel.y - startPixel.y) * progress);
+            progress = easeInOutCubic(t);
             
-            if (progress >= 1.0f) {
+            if (t >= 1.0f) {
                 isComplete = true;
             }
         }
         
+        /**
+         * @return The top-left corner of the moving tile on a board of the given tile size.
+         */
+        Point position(int tile) {
+            Point start = squareToPixel(fromSquare, isBlackPerspective, tile);
+            Point end = squareToPixel(toSquare, isBlackPerspective, tile);
+            return new Point((int) (start.x + (end.x - start.x) * progress),
+                             (int) (start.y + (end.y - start.y) * progress));
+        }
+        
+        /**
+         * @return The area covered by the moving piece and its glow, in board coordinates.
+         */
+        Rectangle bounds(int tile) {
+            Point p = position(tile);
+            return new Rectangle(p.x, p.y, tile, tile);
+        }
+        
         private float easeInOutCubic(float t) {
             return t < 0.5f ? 4 * t * t * t : 1 - (float) Math.pow(-2 * t + 2, 3) / 2;
         }
     }
     
-    private static Point squareToPixel(Point square, boolean isBlackPerspective) {
+    private static Point squareToPixel(Point square, boolean isBlackPerspective, int tile) {
         int drawRow = isBlackPerspective ? 7 - square.x : square.x;
         int drawCol = isBlackPerspective ? 7 - square.y : square.y;
-        return new Point(drawCol * TILE_SIZE + 5, drawRow * TILE_SIZE + 5);
+        return new Point(drawCol * tile, drawRow * tile);
     }
 
     // -----------------------------------------------------------------
@@ -100,9 +131,19 @@ public class ChessMain extends JPanel {
     private JLabel statusLabel;
     private JLabel turnLabel;
     private JLabel modeLabel;
+    private JLabel latencyLabel;
+    private JLabel explorerLabel;
+    private JPanel analysisCard;
+    private JLabel analysisInfoLabel;
+    private JTextArea analysisArea;
+    private JButton analyzeButton;
+    private JButton mateButton;
+    private JTextArea searchStatsArea;
     private JTextArea moveHistoryArea;
     private JLabel timerLabel;
     private java.util.List<String> moveHistory = new ArrayList<>();
+    // Position moveHistory starts from, if not the initial one (a loaded PGN with a FEN tag)
+    private String startFen;
 
     // -----------------------------------------------------------------
     // 4) Opponent chooser (unchanged)
@@ -131,11 +172,117 @@ public class ChessMain extends JPanel {
     // 5) GlobalNetwork class (unchanged)
     // -----------------------------------------------------------------
     static class GlobalNetwork {
+        // Every frame on the wire starts with one of these type bytes
+        static final byte MSG_MOVE = 1;
+        static final byte MSG_MOVE_ACK = 2;
+        static final byte MSG_PING = 3;
+        static final byte MSG_PONG = 4;
+        static final byte MSG_HELLO = 5;
+        static final byte MSG_SYNC = 6;
+        static final byte MSG_SNAPSHOT = 7;
+        static final byte MSG_REJECT = 8;
+
+        // Verdicts exchanged in MSG_SYNC after both sides have announced their move logs
+        private static final int SYNC_CONSISTENT = 0;
+        private static final int SYNC_DIVERGED = 1;
+        private static final int SYNC_UNKNOWN = 2;
+
+        // Heartbeat tuning, overridable with -Dchess.heartbeat.interval / -Dchess.heartbeat.timeout (ms)
+        static final long HEARTBEAT_INTERVAL_MS = Long.getLong("chess.heartbeat.interval", 1000L);
+        static final long HEARTBEAT_TIMEOUT_MS = Long.getLong("chess.heartbeat.timeout", 5000L);
+        // Until the peer's first frame arrives it may still be sitting in a connect dialog
+        static final long HEARTBEAT_GRACE_MS = Long.getLong("chess.heartbeat.grace", 60000L);
+        // How long a dropped link is retried before the game is given up (ms)
+        static final long RECONNECT_WINDOW_MS = Long.getLong("chess.reconnect.window", 120000L);
+        static final long RECONNECT_RETRY_MS = 1000L;
+        static final int HANDSHAKE_TIMEOUT_MS = 10000;
+
+        /**
+         * Callbacks from the network threads; invoked off the EDT unless noted.
+         */
+        interface Listener {
+            void onMove(int seq, int[] move);
+            /** The peer's log diverged from ours; the position was replaced wholesale. */
+            void onSnapshot(String fen);
+            /** Called on the EDT; must describe the position after every move in the log. */
+            String snapshotFen();
+            void onLinkDown(String reason);
+            void onReconnected();
+            void onConnectionLost(String reason);
+        }
+
+        /**
+         * Every move of the game in order, with a rolling digest per prefix so two
+         * peers can cheaply check whether one log is a prefix of the other.
+         * After a snapshot only the digest at the snapshot point is known.
+         */
+        static class MoveLog {
+            private int base = 0;
+            private int size = 0;
+            private int[] moves = new int[64];
+            private long[] digests = new long[65];
+
+            synchronized int length() {
+                return base + size;
+            }
+
+            synchronized int append(int[] move) {
+                if (size == moves.length) {
+                    moves = Arrays.copyOf(moves, size * 2);
+                    digests = Arrays.copyOf(digests, size * 2 + 1);
+                }
+                int packed = (move[0] << 9) | (move[1] << 6) | (move[2] << 3) | move[3];
+                moves[size] = packed;
+                digests[size + 1] = (digests[size] ^ (packed + 1)) * 0x100000001B3L;
+                return base + size++;
+            }
+
+            synchronized int[] moveAt(int seq) {
+                int packed = moves[seq - base];
+                return new int[]{(packed >> 9) & 7, (packed >> 6) & 7, (packed >> 3) & 7, packed & 7};
+            }
+
+            synchronized long digestAt(int count) {
+                return digests[count - base];
+            }
+
+            /** True if the first {@code count} moves of this log hash to {@code digest}. */
+            synchronized boolean hasPrefix(int count, long digest) {
+                return count >= base && count <= base + size && digests[count - base] == digest;
+            }
+
+            synchronized void resetTo(int count, long digest) {
+                base = count;
+                size = 0;
+                digests[0] = digest;
+            }
+        }
+
         private boolean isHost;
         private Socket socket;
         private ServerSocket serverSocket;
         private DataInputStream in;
         private DataOutputStream out;
+        private final Object writeLock = new Object();
+
+        // Session state that survives reconnects
+        private String remoteHost;
+        private int port;
+        private long sessionToken;
+        private final MoveLog moveLog = new MoveLog();
+        private Listener listener;
+        private volatile int generation;
+        private volatile boolean reconnecting;
+
+        // Latency bookkeeping (microseconds)
+        private final LatencyHistogram rttHistogram = new LatencyHistogram();
+        private final LatencyHistogram moveRelayHistogram = new LatencyHistogram();
+        private final Map<Integer, Long> unackedMoves = new ConcurrentHashMap<>();
+        private volatile long lastRttMicros = -1;
+        private volatile long lastReceivedNanos;
+        private volatile boolean heardFromPeer;
+        private volatile boolean closed;
+        private ScheduledExecutorService heartbeat;
 
         public boolean isHost() {
             return isHost;
@@ -143,52 +290,486 @@ public class ChessMain extends JPanel {
 
         public void startServer(int port) throws IOException {
             isHost = true;
+            this.port = port;
             serverSocket = new ServerSocket(port);
-            JOptionPane.showMessageDialog(null, 
+            JOptionPane.showMessageDialog(null,
                     "Hosting a game... Waiting for a friend to connect on port " + port + ".");
-            socket = serverSocket.accept();
-            serverSocket.close();
-            setupStreams();
+            try {
+                while (true) {
+                    Socket candidate = serverSocket.accept();
+                    try {
+                        handshake(candidate);
+                        break;
+                    } catch (IOException e) {
+                        candidate.close();
+                        System.err.println("Rejected connection: " + e.getMessage());
+                    }
+                }
+            } finally {
+                serverSocket.close();
+            }
             JOptionPane.showMessageDialog(null, "Friend connected!");
         }
 
         public void connectToHost(String host, int port) throws IOException {
             isHost = false;
-            JOptionPane.showMessageDialog(null, 
+            this.remoteHost = host;
+            this.port = port;
+            JOptionPane.showMessageDialog(null,
                     "Connecting to " + host + " on port " + port + "...");
-            socket = new Socket(host, port);
-            setupStreams();
+            Socket candidate = new Socket(host, port);
+            try {
+                handshake(candidate);
+            } catch (IOException e) {
+                candidate.close();
+                throw e;
+            }
             JOptionPane.showMessageDialog(null, "Connected to friend!");
         }
 
-        private void setupStreams() throws IOException {
-            in = new DataInputStream(socket.getInputStream());
-            out = new DataOutputStream(socket.getOutputStream());
+        /**
+         * Exchanges session tokens and move-log positions on a fresh socket, then
+         * brings the shorter side up to date: missing moves are replayed when one log
+         * is a prefix of the other, otherwise the host sends a FEN snapshot.
+         * Only installs the socket as the live link once the peer is accepted.
+         */
+        private void handshake(Socket s) throws IOException {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            DataInputStream din = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            int myCount;
+            long myDigest;
+            synchronized (moveLog) {
+                myCount = moveLog.length();
+                myDigest = moveLog.digestAt(myCount);
+            }
+
+            if (!isHost) {
+                writeHello(dout, sessionToken, myCount, myDigest);
+            }
+            byte type = din.readByte();
+            if (type == MSG_REJECT) {
+                throw new IOException("Host rejected the session: " + din.readUTF());
+            }
+            if (type != MSG_HELLO) {
+                throw new IOException("Unexpected frame type " + type + " during handshake");
+            }
+            long peerToken = din.readLong();
+            int peerCount = din.readInt();
+            long peerDigest = din.readLong();
+            if (isHost) {
+                boolean fresh = sessionToken == 0;
+                if (fresh ? peerToken != 0 : peerToken != sessionToken) {
+                    dout.writeByte(MSG_REJECT);
+                    dout.writeUTF("unknown session");
+                    dout.flush();
+                    throw new IOException("Peer presented an unknown session token");
+                }
+                if (fresh) {
+                    long token = 0;
+                    while (token == 0) token = new java.security.SecureRandom().nextLong();
+                    sessionToken = token;
+                }
+                writeHello(dout, sessionToken, myCount, myDigest);
+            } else {
+                sessionToken = peerToken;
+            }
+
+            // Only the side holding the longer log can tell whether the other is a prefix of it
+            int myVerdict = myCount < peerCount ? SYNC_UNKNOWN
+                    : moveLog.hasPrefix(peerCount, peerDigest) ? SYNC_CONSISTENT : SYNC_DIVERGED;
+            dout.writeByte(MSG_SYNC);
+            dout.writeInt(myVerdict);
+            dout.flush();
+            if (din.readByte() != MSG_SYNC) {
+                throw new IOException("Expected sync verdict from peer");
+            }
+            int peerVerdict = din.readInt();
+            boolean diverged = myVerdict == SYNC_DIVERGED || peerVerdict == SYNC_DIVERGED;
+
+            String snapshotFen = null;
+            int replayFrom = peerCount;
+            long snapshotDigest = 0;
+            if (diverged && isHost) {
+                Object[] snap = captureSnapshot();
+                snapshotFen = (String) snap[0];
+                replayFrom = (Integer) snap[1];
+                snapshotDigest = (Long) snap[2];
+            }
+            s.setSoTimeout(0);
+
+            synchronized (moveLog) {
+                synchronized (writeLock) {
+                    if (snapshotFen != null) {
+                        dout.writeByte(MSG_SNAPSHOT);
+                        dout.writeInt(replayFrom);
+                        dout.writeLong(snapshotDigest);
+                        dout.writeUTF(snapshotFen);
+                    }
+                    if (!diverged || isHost) {
+                        for (int seq = replayFrom; seq < moveLog.length(); seq++) {
+                            writeMoveFrame(dout, seq, moveLog.moveAt(seq));
+                        }
+                    }
+                    dout.flush();
+                    this.socket = s;
+                    this.in = din;
+                    this.out = dout;
+                }
+            }
+        }
+
+        private static void writeHello(DataOutputStream dout, long token, int count, long digest) throws IOException {
+            dout.writeByte(MSG_HELLO);
+            dout.writeLong(token);
+            dout.writeInt(count);
+            dout.writeLong(digest);
+            dout.flush();
         }
 
-        public int[] receiveMove() throws IOException {
-            int fromX = in.readInt();
-            int fromY = in.readInt();
-            int toX = in.readInt();
-            int toY = in.readInt();
-            return new int[]{fromX, fromY, toX, toY};
+        private static void writeMoveFrame(DataOutputStream dout, int seq, int[] move) throws IOException {
+            dout.writeByte(MSG_MOVE);
+            dout.writeInt(seq);
+            dout.writeInt(move[0]);
+            dout.writeInt(move[1]);
+            dout.writeInt(move[2]);
+            dout.writeInt(move[3]);
         }
 
+        /**
+         * Reads the position on the EDT so it matches the move log exactly.
+         * @return {fen, move count, digest}
+         */
+        private Object[] captureSnapshot() throws IOException {
+            Object[] snap = new Object[3];
+            try {
+                SwingUtilities.invokeAndWait(() -> {
+                    synchronized (moveLog) {
+                        snap[0] = listener.snapshotFen();
+                        snap[1] = moveLog.length();
+                        snap[2] = moveLog.digestAt(moveLog.length());
+                    }
+                });
+            } catch (InterruptedException | java.lang.reflect.InvocationTargetException e) {
+                throw new IOException("Could not capture position snapshot", e);
+            }
+            return snap;
+        }
+
+        /**
+         * Starts the reader thread and the heartbeat. Moves and link state changes
+         * are reported to the listener for the lifetime of the session.
+         */
+        public void startSession(Listener listener) {
+            this.listener = listener;
+            startLink();
+        }
+
+        private void startLink() {
+            int gen = generation;
+            DataInputStream din = in;
+            lastReceivedNanos = System.nanoTime();
+            Thread reader = new Thread(() -> readLoop(gen, din), "chess-net-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "chess-net-heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+            heartbeat.scheduleAtFixedRate(() -> heartbeatTick(gen),
+                    HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private void readLoop(int gen, DataInputStream din) {
+            try {
+                while (!closed && gen == generation) {
+                    byte type = din.readByte();
+                    lastReceivedNanos = System.nanoTime();
+                    heardFromPeer = true;
+                    switch (type) {
+                        case MSG_MOVE: {
+                            int seq = din.readInt();
+                            int[] move = {din.readInt(), din.readInt(), din.readInt(), din.readInt()};
+                            synchronized (moveLog) {
+                                if (seq > moveLog.length()) {
+                                    throw new IOException("Missing moves before #" + seq);
+                                }
+                                if (seq < moveLog.length()) {
+                                    // Replayed move we already hold; just confirm it
+                                    acknowledgeMove(seq);
+                                    break;
+                                }
+                                moveLog.append(move);
+                            }
+                            ChessEvents.MoveReceived received = new ChessEvents.MoveReceived();
+                            if (received.shouldCommit()) {
+                                received.seq = seq;
+                                received.bytes = ChessEvents.MOVE_FRAME_BYTES;
+                                received.commit();
+                            }
+                            listener.onMove(seq, move);
+                            break;
+                        }
+                        case MSG_MOVE_ACK: {
+                            int seq = din.readInt();
+                            Long sentAt = unackedMoves.remove(seq);
+                            if (sentAt != null) {
+                                long relayMicros = (System.nanoTime() - sentAt) / 1000;
+                                moveRelayHistogram.recordValue(relayMicros);
+                                ChessEvents.MoveAcknowledged acked = new ChessEvents.MoveAcknowledged();
+                                if (acked.shouldCommit()) {
+                                    acked.seq = seq;
+                                    acked.relayMicros = relayMicros;
+                                    acked.commit();
+                                }
+                            }
+                            break;
+                        }
+                        case MSG_PING: {
+                            long stamp = din.readLong();
+                            synchronized (writeLock) {
+                                out.writeByte(MSG_PONG);
+                                out.writeLong(stamp);
+                                out.flush();
+                            }
+                            break;
+                        }
+                        case MSG_PONG: {
+                            long rtt = (System.nanoTime() - din.readLong()) / 1000;
+                            lastRttMicros = rtt;
+                            rttHistogram.recordValue(rtt);
+                            break;
+                        }
+                        case MSG_SNAPSHOT: {
+                            int count = din.readInt();
+                            long digest = din.readLong();
+                            String fen = din.readUTF();
+                            moveLog.resetTo(count, digest);
+                            listener.onSnapshot(fen);
+                            break;
+                        }
+                        default:
+                            throw new IOException("Unknown frame type " + type);
+                    }
+                }
+            } catch (IOException e) {
+                linkFailed(gen, e.getMessage() != null ? e.getMessage() : "connection closed by peer");
+            }
+        }
+
+        private void heartbeatTick(int gen) {
+            long silentMs = (System.nanoTime() - lastReceivedNanos) / 1_000_000;
+            long limit = heardFromPeer ? HEARTBEAT_TIMEOUT_MS : Math.max(HEARTBEAT_TIMEOUT_MS, HEARTBEAT_GRACE_MS);
+            if (silentMs > limit) {
+                linkFailed(gen, "No response from peer for " + silentMs + " ms");
+                return;
+            }
+            try {
+                synchronized (writeLock) {
+                    out.writeByte(MSG_PING);
+                    out.writeLong(System.nanoTime());
+                    out.flush();
+                }
+            } catch (IOException e) {
+                linkFailed(gen, e.getMessage());
+            }
+        }
+
+        /**
+         * Tears down the current link and keeps trying to re-establish the session
+         * until {@link #RECONNECT_WINDOW_MS} runs out. Stale failures from links
+         * that were already replaced are ignored.
+         */
+        private void linkFailed(int gen, String reason) {
+            synchronized (this) {
+                if (closed || reconnecting || gen != generation) return;
+                reconnecting = true;
+                generation++;
+            }
+            closeLink();
+            listener.onLinkDown(reason);
+            Thread t = new Thread(() -> reconnect(reason), "chess-net-reconnect");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void reconnect(String reason) {
+            long deadline = System.currentTimeMillis() + RECONNECT_WINDOW_MS;
+            while (!closed && System.currentTimeMillis() < deadline) {
+                try {
+                    if (isHost) {
+                        try (ServerSocket ss = new ServerSocket()) {
+                            ss.setReuseAddress(true);
+                            ss.bind(new InetSocketAddress(port));
+                            ss.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+                            Socket candidate = ss.accept();
+                            try {
+                                handshake(candidate);
+                            } catch (IOException e) {
+                                candidate.close();
+                                throw e;
+                            }
+                        }
+                    } else {
+                        Socket candidate = new Socket();
+                        try {
+                            candidate.connect(new InetSocketAddress(remoteHost, port), (int) RECONNECT_RETRY_MS * 3);
+                            handshake(candidate);
+                        } catch (IOException e) {
+                            candidate.close();
+                            throw e;
+                        }
+                    }
+                    unackedMoves.clear();
+                    reconnecting = false;
+                    startLink();
+                    listener.onReconnected();
+                    return;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(RECONNECT_RETRY_MS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            closed = true;
+            listener.onConnectionLost(reason);
+        }
+
+        /**
+         * Logs the move and sends it. Once logged, the move reaches the peer even if the
+         * write fails: the failure is handled as a dropped link, and the move is replayed
+         * when the session resumes.
+         */
         public void sendMove(int fromX, int fromY, int toX, int toY) throws IOException {
-            if (out != null) {
-                out.writeInt(fromX);
-                out.writeInt(fromY);
-                out.writeInt(toX);
-                out.writeInt(toY);
-                out.flush();
+            int[] move = {fromX, fromY, toX, toY};
+            int seq;
+            int gen;
+            DataOutputStream link;
+            synchronized (moveLog) {
+                seq = moveLog.append(move);
+                gen = generation;
+                link = reconnecting ? null : out;
+            }
+            if (link == null) {
+                // Logged; the move is replayed to the peer once the session resumes
+                return;
+            }
+            ChessEvents.MoveSent event = new ChessEvents.MoveSent();
+            event.begin();
+            try {
+                synchronized (writeLock) {
+                    unackedMoves.put(seq, System.nanoTime());
+                    writeMoveFrame(link, seq, move);
+                    link.flush();
+                }
+            } catch (IOException e) {
+                linkFailed(gen, e.getMessage());
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.seq = seq;
+                event.bytes = ChessEvents.MOVE_FRAME_BYTES;
+                event.commit();
             }
         }
+
+        /**
+         * Tells the peer a move has been applied locally, closing its relay-latency sample.
+         */
+        public void acknowledgeMove(int seq) throws IOException {
+            if (out != null && !reconnecting) {
+                synchronized (writeLock) {
+                    out.writeByte(MSG_MOVE_ACK);
+                    out.writeInt(seq);
+                    out.flush();
+                }
+            }
+        }
+
+        public boolean isReconnecting() {
+            return reconnecting;
+        }
+
+        /**
+         * @return The most recent heartbeat round trip in microseconds, or -1 before the first pong.
+         */
+        public long getLastRttMicros() {
+            return lastRttMicros;
+        }
+
+        public LatencyHistogram getRttHistogram() {
+            return rttHistogram;
+        }
+
+        public LatencyHistogram getMoveRelayHistogram() {
+            return moveRelayHistogram;
+        }
+
+        /**
+         * @return Milliseconds since anything was last heard from the peer.
+         */
+        public long getSilenceMillis() {
+            return (System.nanoTime() - lastReceivedNanos) / 1_000_000;
+        }
+
+        /**
+         * Exports the link statistics as JSON (all latencies in microseconds).
+         */
+        public String exportStats() {
+            return "{\"role\":\"" + (isHost ? "host" : "client") + "\""
+                    + ",\"heartbeatIntervalMs\":" + HEARTBEAT_INTERVAL_MS
+                    + ",\"heartbeatTimeoutMs\":" + HEARTBEAT_TIMEOUT_MS
+                    + ",\"moves\":" + moveLog.length()
+                    + ",\"lastRtt\":" + lastRttMicros
+                    + ",\"rtt\":" + rttHistogram.toJson()
+                    + ",\"moveRelay\":" + moveRelayHistogram.toJson()
+                    + ",\"unackedMoves\":" + unackedMoves.size() + "}";
+        }
+
+        private void closeLink() {
+            if (heartbeat != null) heartbeat.shutdownNow();
+            try {
+                if (socket != null) socket.close();
+            } catch (IOException ignored) {}
+        }
+
+        public void close() {
+            closed = true;
+            closeLink();
+        }
     }
 
     // -----------------------------------------------------------------
     // 6) Main entry point (enhanced)
     // -----------------------------------------------------------------
     public static void main(String[] args) {
+        StartupProfile.mark("main");
+        // -Dchess.search.stats=<file> dumps the search counters when the game exits
+        String searchStatsFile = System.getProperty("chess.search.stats");
+        if (searchStatsFile != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try (PrintWriter w = new PrintWriter(new FileWriter(searchStatsFile))) {
+                    w.println(SearchMetrics.INSTANCE.toJson());
+                } catch (IOException e) {
+                    System.err.println("Failed to write search stats: " + e.getMessage());
+                }
+            }));
+        }
+        GameJournal.Recovered recovered = offerRecovery();
+        if (recovered != null) {
+            SwingUtilities.invokeLater(() -> createAndShowGUI(
+                    recovered.opponentChoice, recovered.aiDifficulty, null, recovered));
+            return;
+        }
+
         final int opponentChoice = OpponentChooser.chooseOpponent();
         final int difficultyChoice;
         final GlobalNetwork globalNetwork;
@@ -223,40 +804,95 @@ public class ChessMain extends JPanel {
                 options,
                 options[0]
             );
-            try {
-                if (mode == 0) {
-                    String portStr = JOptionPane.showInputDialog("Enter port to host (e.g. 5000):");
-                    int port = (portStr == null || portStr.isEmpty()) ? 5000 : Integer.parseInt(portStr);
-                    globalNetwork.startServer(port);
-                } else {
-                    String host = JOptionPane.showInputDialog("Enter host IP address:");
-                    String portStr = JOptionPane.showInputDialog("Enter port to connect (e.g. 5000):");
-                    int port = (portStr == null || portStr.isEmpty()) ? 5000 : Integer.parseInt(portStr);
-                    globalNetwork.connectToHost(host, port);
+            String host = null;
+            String portStr;
+            if (mode == 0) {
+                portStr = JOptionPane.showInputDialog("Enter port to host (e.g. 5000):");
+            } else {
+                host = JOptionPane.showInputDialog("Enter host IP address:");
+                portStr = JOptionPane.showInputDialog("Enter port to connect (e.g. 5000):");
+            }
+            int port = (portStr == null || portStr.isEmpty()) ? 5000 : Integer.parseInt(portStr);
+            while (true) {
+                try {
+                    if (mode == 0) {
+                        globalNetwork.startServer(port);
+                    } else {
+                        globalNetwork.connectToHost(host, port);
+                    }
+                    break;
+                } catch (IOException e) {
+                    int retry = JOptionPane.showConfirmDialog(
+                            null, 
+                            "An error occurred: " + e.getMessage() + "\nTry again?", 
+                            "Error", 
+                            JOptionPane.YES_NO_OPTION,
+                            JOptionPane.ERROR_MESSAGE
+                    );
+                    if (retry != JOptionPane.YES_OPTION) {
+                        System.exit(0);
+                    }
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(
-                        null, 
-                        "An error occurred: " + e.getMessage(), 
-                        "Error", 
-                        JOptionPane.ERROR_MESSAGE
-                );
-                System.exit(0);
+            }
+            // -Dchess.net.stats=<file> dumps the link statistics when the game exits
+            String statsFile = System.getProperty("chess.net.stats");
+            if (statsFile != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try (PrintWriter w = new PrintWriter(new FileWriter(statsFile))) {
+                        w.println(globalNetwork.exportStats());
+                    } catch (IOException e) {
+                        System.err.println("Failed to write network stats: " + e.getMessage());
+                    }
+                }));
             }
         } else {
             globalNetwork = null;
         }
 
-        SwingUtilities.invokeLater(() -> createAndShowGUI(opponentChoice, difficultyChoice, globalNetwork));
+        SwingUtilities.invokeLater(() -> createAndShowGUI(opponentChoice, difficultyChoice, globalNetwork, null));
+    }
+    
+    /**
+     * Looks for a journaled game that never finished and asks whether to resume it.
+     * Declined games are closed off so they are not offered again.
+     */
+    private static GameJournal.Recovered offerRecovery() {
+        java.util.List<GameJournal.Recovered> unfinished = GameJournal.findUnfinished(JOURNAL_DIR);
+        if (unfinished.isEmpty()) {
+            return null;
+        }
+        GameJournal.Recovered newest = unfinished.get(0);
+        String mode = newest.opponentChoice == 0 ? "vs Computer" : "Local Friend";
+        int answer = JOptionPane.showConfirmDialog(
+                null,
+                "An unfinished " + mode + " game from "
+                        + new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(newest.startedMillis))
+                        + " (" + newest.moves.size() + " moves) was found.\nResume it?",
+                "Resume Game",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (answer == JOptionPane.YES_OPTION) {
+            return newest;
+        }
+        try (GameJournal journal = GameJournal.reopen(newest)) {
+            journal.finish("abandoned");
+        } catch (IOException e) {
+            System.err.println("Failed to close journal: " + e.getMessage());
+        }
+        return null;
     }
     
-    private static void createAndShowGUI(int opponentChoice, int difficultyChoice, GlobalNetwork globalNetwork) {
+    private static void createAndShowGUI(int opponentChoice, int difficultyChoice, GlobalNetwork globalNetwork,
+                                         GameJournal.Recovered recovered) {
+        StartupProfile.mark("window");
         JFrame frame = new JFrame("Chess - Multiplayer Edition");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setResizable(false);
+        frame.setResizable(true);
         
         boolean isBlackPerspective = (globalNetwork != null && !globalNetwork.isHost());
         ChessMain chessPanel = new ChessMain(opponentChoice, difficultyChoice, globalNetwork, isBlackPerspective);
+        chessPanel.openJournal(recovered);
         
         // Create main layout
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -264,6 +900,7 @@ public class ChessMain extends JPanel {
         
         // Add chess board
         chessPanel.setPreferredSize(new Dimension(BOARD_SIZE, BOARD_SIZE));
+        chessPanel.setMinimumSize(new Dimension(MIN_TILE_SIZE * 8, MIN_TILE_SIZE * 8));
         mainPanel.add(chessPanel, BorderLayout.CENTER);
         
         // Add sidebar
@@ -273,9 +910,21 @@ public class ChessMain extends JPanel {
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        StartupProfile.mark("frameShown");
+        
+        // -Dchess.spectator.port=<port> broadcasts the game to read-only spectators
+        Integer spectatorPort = Integer.getInteger("chess.spectator.port");
+        if (spectatorPort != null) {
+            chessPanel.startSpectatorHub(spectatorPort);
+        }
         
         // Start animation timer
         chessPanel.startAnimationTimer();
+        
+        // A resumed game may be waiting on the computer
+        if (recovered != null) {
+            chessPanel.checkGameOverState();
+        }
     }
 
     // -----------------------------------------------------------------
@@ -286,10 +935,30 @@ public class ChessMain extends JPanel {
     boolean playWithGlobalFriend;
     int aiDifficulty = 0;
     GlobalNetwork globalNetwork; 
+    SpectatorHub spectatorHub;
+    GameJournal journal;
+    PositionDatabase positionDb;
+    final Analyzer analyzer = new Analyzer();
+    final Engine.Session engine = Engine.newSession();
+    private javax.swing.Timer analysisTimer;
+    private String analyzedFen;
+    private int analysisLines = 3;
+    private MateSolver mateSolver;
+    // Position the mate search ran on, while its result is on display
+    private String mateFen;
     boolean isMyTurn = true; 
     boolean isBlackPerspective;  
 
-    Map<String, BufferedImage> images = new HashMap<>();
+    final PieceSprites pieceSprites = new PieceSprites(this::repaint);
+    // Board geometry, recomputed whenever the panel is resized
+    private int tileSize = TILE_SIZE;
+    private int boardX, boardY;
+    // Device pixels per user-space pixel, e.g. 2.0 on a HiDPI display
+    private double renderScale = 1.0;
+    private VolatileImage boardLayer;
+    private BufferedImage boardLayerImage;
+    // What the cached board layer was drawn for: perspective, tile size and scale
+    private String boardLayerKey;
     ChessGame game = new ChessGame();
     int[] selectedSquare = null;
     java.util.List<int[]> legalMoves = new ArrayList<>();
@@ -310,9 +979,7 @@ public class ChessMain extends JPanel {
 
         if (playWithGlobalFriend && globalNetwork != null) {
             isMyTurn = globalNetwork.isHost();  
-            if (!isMyTurn) {
-                startListeningForMoves(globalNetwork);
-            }
+            startListeningForMoves(globalNetwork);
         }
 
         addMouseListener(new EnhancedMouseHandler());
@@ -327,17 +994,176 @@ public class ChessMain extends JPanel {
         setFocusable(true);
     }
     
+    private void startSpectatorHub(int port) {
+        SpectatorHub hub = new SpectatorHub(port, Integer.getInteger("chess.spectator.maxLag", 64));
+        try {
+            hub.start(game.toFen());
+            spectatorHub = hub;
+        } catch (IOException e) {
+            System.err.println("Could not start spectator hub on port " + port + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Journals local games so they survive a crash or closed window; network
+     * games recover through session resume instead.
+     */
+    private void openJournal(GameJournal.Recovered recovered) {
+        if (playWithGlobalFriend) return;
+        try {
+            if (recovered != null) {
+                game = recovered.game;
+                ChessGame replay = new ChessGame();
+                for (int[] m : recovered.moves) {
+                    moveHistory.add(San.toSan(replay, m[0], m[1], m[2], m[3], (char) m[4]));
+                    replay.makeMove(m[0], m[1], m[2], m[3], (char) m[4]);
+                }
+                updateMoveHistory();
+                updateSidePanel();
+                journal = GameJournal.reopen(recovered);
+            } else {
+                journal = GameJournal.create(JOURNAL_DIR, playWithComputer ? 0 : 1, aiDifficulty);
+            }
+        } catch (IOException e) {
+            System.err.println("Game journal disabled: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Hands a move that was just applied to the journal and any spectators.
+     */
+    private void recordMove(int fromX, int fromY, int toX, int toY) {
+        if (journal != null) {
+            try {
+                journal.appendMove(fromX, fromY, toX, toY, game);
+            } catch (IOException e) {
+                System.err.println("Failed to journal move: " + e.getMessage());
+            }
+        }
+        if (spectatorHub != null) {
+            spectatorHub.publishMove(new int[]{fromX, fromY, toX, toY}, game.toFen());
+        }
+    }
+    
+    /**
+     * Creates the animation clock. It only runs while a piece is moving, so an
+     * idle board costs no timer wake-ups at all.
+     */
     private void startAnimationTimer() {
         animationTimer = new javax.swing.Timer(16, e -> {
-            if (currentAnimation != null) {
-                currentAnimation.update();
-                if (currentAnimation.isComplete) {
-                    currentAnimation = null;
-                }
-                repaint();
+            if (currentAnimation == null) {
+                animationTimer.stop();
+                return;
+            }
+            ChessEvents.AnimationFrame frame = new ChessEvents.AnimationFrame();
+            frame.begin();
+            long now = System.nanoTime();
+            long interval = lastAnimationFrameNanos == 0 ? 0 : (now - lastAnimationFrameNanos) / 1_000_000;
+            lastAnimationFrameNanos = now;
+            repaintBoardArea(currentAnimation.bounds(tileSize));
+            currentAnimation.update();
+            repaintBoardArea(currentAnimation.bounds(tileSize));
+            if (currentAnimation.isComplete) {
+                repaintSquare(currentAnimation.toSquare.x, currentAnimation.toSquare.y);
+                currentAnimation = null;
+                lastAnimationFrameNanos = 0;
+                animationTimer.stop();
+            }
+            frame.end();
+            if (frame.shouldCommit()) {
+                frame.intervalMillis = interval;
+                frame.commit();
             }
         });
-        animationTimer.start();
+    }
+    
+    private void startAnimation(PieceAnimation animation) {
+        currentAnimation = animation;
+        repaintSquare(animation.fromSquare.x, animation.fromSquare.y);
+        repaintBoardArea(animation.bounds(tileSize));
+        if (animationTimer != null && !animationTimer.isRunning()) {
+            animationTimer.start();
+        }
+    }
+    
+    /**
+     * Sizes the board to the largest multiple of eight that fits, centred in the panel.
+     */
+    private void layoutBoard() {
+        int size = Math.min(getWidth(), getHeight());
+        tileSize = size <= 0 ? TILE_SIZE : Math.max(MIN_TILE_SIZE, size / 8);
+        boardX = Math.max(0, (getWidth() - tileSize * 8) / 2);
+        boardY = Math.max(0, (getHeight() - tileSize * 8) / 2);
+    }
+    
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        layoutBoard();
+    }
+    
+    /**
+     * @return The area of a board square in board coordinates, i.e. relative to the board's corner.
+     */
+    private Rectangle squareBounds(int row, int col) {
+        int drawRow = isBlackPerspective ? 7 - row : row;
+        int drawCol = isBlackPerspective ? 7 - col : col;
+        return new Rectangle(drawCol * tileSize, drawRow * tileSize, tileSize, tileSize);
+    }
+    
+    private void repaintSquare(int row, int col) {
+        repaintBoardArea(squareBounds(row, col));
+    }
+    
+    private void repaintBoardArea(Rectangle r) {
+        repaint(r.x + boardX, r.y + boardY, r.width, r.height);
+    }
+    
+    /**
+     * Repaints the selected square and its move markers.
+     */
+    private void repaintSelection() {
+        if (selectedSquare != null) {
+            repaintSquare(selectedSquare[0], selectedSquare[1]);
+        }
+        for (int[] mv : legalMoves) {
+            repaintSquare(mv[0], mv[1]);
+        }
+    }
+    
+    /**
+     * Collects the squares a move is about to change: source, target, the rook
+     * of a castle, a pawn taken en passant and both kings (for the check
+     * highlight). Call before the move is made, then repaint them after.
+     */
+    private java.util.List<Point> moveDirtySquares(int fromX, int fromY, int toX, int toY) {
+        java.util.List<Point> squares = new ArrayList<>();
+        squares.add(new Point(fromX, fromY));
+        squares.add(new Point(toX, toY));
+        Piece moving = game.board[fromX][fromY];
+        if (moving instanceof King && Math.abs(toY - fromY) == 2) {
+            squares.add(new Point(fromX, toY > fromY ? 7 : 0));
+            squares.add(new Point(fromX, toY > fromY ? 5 : 3));
+        } else if (moving instanceof Pawn && fromY != toY && game.board[toX][toY] == null) {
+            squares.add(new Point(fromX, toY));
+        }
+        addKingSquares(squares);
+        return squares;
+    }
+    
+    private void addKingSquares(java.util.List<Point> squares) {
+        Point white = findKing("white");
+        Point black = findKing("black");
+        if (white != null) squares.add(white);
+        if (black != null) squares.add(black);
+    }
+    
+    private void repaintSquares(java.util.List<Point> squares) {
+        addKingSquares(squares);
+        repaintSelection();
+        for (Point p : squares) {
+            repaintSquare(p.x, p.y);
+        }
     }
 
     // -----------------------------------------------------------------
@@ -362,6 +1188,11 @@ public class ChessMain extends JPanel {
         JLabel modeSubLabel = createStyledLabel("Game Mode", 12, TEXT_SECONDARY, false);
         modeCard.add(modeSubLabel);
         modeCard.add(modeLabel);
+        if (playWithGlobalFriend && globalNetwork != null) {
+            latencyLabel = createStyledLabel("Latency: --", 12, TEXT_SECONDARY, false);
+            modeCard.add(latencyLabel);
+            new javax.swing.Timer(1000, e -> updateLatencyLabel()).start();
+        }
         sidePanel.add(modeCard);
         sidePanel.add(Box.createVerticalStrut(15));
 
@@ -383,6 +1214,21 @@ public class ChessMain extends JPanel {
         sidePanel.add(statusCard);
         sidePanel.add(Box.createVerticalStrut(20));
 
+        // How this position went in our own games
+        if (POSITION_DB != null) {
+            try {
+                positionDb = PositionDatabase.open(new File(POSITION_DB));
+                JPanel explorerCard = createCard();
+                explorerLabel = createStyledLabel("--", 12, TEXT_PRIMARY, false);
+                explorerCard.add(createStyledLabel("Position in Database", 12, TEXT_SECONDARY, false));
+                explorerCard.add(explorerLabel);
+                sidePanel.add(explorerCard);
+                sidePanel.add(Box.createVerticalStrut(20));
+            } catch (IOException e) {
+                System.err.println("Position database disabled: " + e.getMessage());
+            }
+        }
+
         // Move history
         JLabel historyLabel = createStyledLabel("Move History", 16, TEXT_PRIMARY, true);
         historyLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -401,10 +1247,244 @@ public class ChessMain extends JPanel {
         historyScroll.setBorder(BorderFactory.createLineBorder(BORDER_COLOR));
         historyScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         sidePanel.add(historyScroll);
+        sidePanel.add(Box.createVerticalStrut(10));
+
+        // PGN save/load
+        JPanel pgnRow = new JPanel(new GridLayout(1, 2, 10, 0));
+        pgnRow.setBackground(SIDEBAR_BG);
+        pgnRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+        pgnRow.setMaximumSize(new Dimension(Integer.MAX_VALUE, 32));
+        JButton saveButton = createStyledButton("Save PGN");
+        saveButton.addActionListener(e -> savePgn());
+        pgnRow.add(saveButton);
+        JButton loadButton = createStyledButton("Load PGN");
+        loadButton.setEnabled(!playWithGlobalFriend);
+        loadButton.addActionListener(e -> loadPgn());
+        pgnRow.add(loadButton);
+        sidePanel.add(pgnRow);
+
+        // Live analysis; not offered in online games
+        if (!playWithGlobalFriend) {
+            sidePanel.add(Box.createVerticalStrut(10));
+            JPanel analysisRow = new JPanel(new GridLayout(1, 2, 10, 0));
+            analysisRow.setBackground(SIDEBAR_BG);
+            analysisRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+            analysisRow.setMaximumSize(new Dimension(Integer.MAX_VALUE, 32));
+            analyzeButton = createStyledButton("Analyze");
+            analyzeButton.addActionListener(e -> toggleAnalysis());
+            analysisRow.add(analyzeButton);
+            JComboBox<String> linesBox = new JComboBox<>(new String[]{"1 line", "2 lines", "3 lines", "4 lines", "5 lines"});
+            linesBox.setSelectedIndex(analysisLines - 1);
+            linesBox.addActionListener(e -> {
+                analysisLines = linesBox.getSelectedIndex() + 1;
+                analyzedFen = null;
+                updateAnalysis();
+            });
+            analysisRow.add(linesBox);
+            sidePanel.add(analysisRow);
+            sidePanel.add(Box.createVerticalStrut(10));
+            JPanel mateRow = new JPanel(new GridLayout(1, 1));
+            mateRow.setBackground(SIDEBAR_BG);
+            mateRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+            mateRow.setMaximumSize(new Dimension(Integer.MAX_VALUE, 32));
+            mateButton = createStyledButton("Find Mate");
+            mateButton.addActionListener(e -> findMate());
+            mateRow.add(mateButton);
+            sidePanel.add(mateRow);
+            sidePanel.add(Box.createVerticalStrut(10));
+
+            analysisCard = createCard();
+            analysisCard.setAlignmentX(Component.LEFT_ALIGNMENT);
+            analysisInfoLabel = createStyledLabel("Analysis", 12, TEXT_SECONDARY, false);
+            analysisCard.add(analysisInfoLabel);
+            analysisArea = new JTextArea(5, 0);
+            analysisArea.setBackground(CARD_BG);
+            analysisArea.setForeground(TEXT_PRIMARY);
+            analysisArea.setFont(new Font("Consolas", Font.PLAIN, 11));
+            analysisArea.setEditable(false);
+            analysisArea.setLineWrap(false);
+            analysisCard.add(analysisArea);
+            analysisCard.setMaximumSize(new Dimension(Integer.MAX_VALUE, analysisCard.getPreferredSize().height));
+            analysisCard.setVisible(false);
+            sidePanel.add(analysisCard);
+            analysisTimer = new javax.swing.Timer(ANALYSIS_REFRESH_MS, e -> showAnalysis());
+        }
+
+        if (DEBUG_SEARCH) {
+            sidePanel.add(Box.createVerticalStrut(10));
+            JPanel statsCard = createCard();
+            statsCard.setAlignmentX(Component.LEFT_ALIGNMENT);
+            statsCard.add(createStyledLabel("Search Stats", 12, TEXT_SECONDARY, false));
+            searchStatsArea = new JTextArea(7, 0);
+            searchStatsArea.setBackground(CARD_BG);
+            searchStatsArea.setForeground(TEXT_PRIMARY);
+            searchStatsArea.setFont(new Font("Consolas", Font.PLAIN, 11));
+            searchStatsArea.setEditable(false);
+            statsCard.add(searchStatsArea);
+            statsCard.setMaximumSize(new Dimension(Integer.MAX_VALUE, statsCard.getPreferredSize().height));
+            sidePanel.add(statsCard);
+            showSearchStats();
+        }
 
         return sidePanel;
     }
     
+    private void toggleAnalysis() {
+        boolean start = !analysisTimer.isRunning();
+        if (start) {
+            stopMateSearch();
+            analysisArea.setLineWrap(false);
+            analysisTimer.start();
+            analyzedFen = null;
+            updateAnalysis();
+        } else {
+            analysisTimer.stop();
+            analyzer.stop();
+        }
+        analyzeButton.setText(start ? "Stop Analysis" : "Analyze");
+        analysisCard.setVisible(start);
+        sidePanel.revalidate();
+    }
+    
+    /**
+     * Restarts the analysis when the position on the board changed.
+     */
+    private void updateAnalysis() {
+        if (mateFen != null && !mateFen.equals(game.toFen())) {
+            stopMateSearch();
+            analysisCard.setVisible(false);
+            sidePanel.revalidate();
+        }
+        if (analysisTimer == null || !analysisTimer.isRunning()) return;
+        String fen = game.toFen();
+        if (fen.equals(analyzedFen)) return;
+        analyzedFen = fen;
+        String over = game.isGameOver();
+        if (over != null) {
+            analyzer.stop();
+            analysisInfoLabel.setText(describeGameOver(over));
+            analysisArea.setText("");
+            return;
+        }
+        analysisInfoLabel.setText("Thinking...");
+        analysisArea.setText("");
+        analyzer.analyze(game, analysisLines);
+    }
+    
+    /**
+     * Looks for a forced mate in the current position on a background thread and shows
+     * it in the analysis card; pressed again while searching, gives up.
+     */
+    private void findMate() {
+        if (mateSolver != null) {
+            stopMateSearch();
+            analysisInfoLabel.setText("Mate search stopped");
+            return;
+        }
+        if (analysisTimer.isRunning()) toggleAnalysis();
+        String over = game.isGameOver();
+        ChessGame root = game.deepCopy();
+        String fen = root.toFen();
+        mateFen = fen;
+        analysisInfoLabel.setText(over != null ? describeGameOver(over) : "Looking for mate...");
+        analysisArea.setText("");
+        analysisCard.setVisible(true);
+        sidePanel.revalidate();
+        if (over != null) return;
+
+        MateSolver solver = new MateSolver();
+        mateSolver = solver;
+        mateButton.setText("Stop");
+        Thread worker = new Thread(() -> {
+            MateSolver.Result r = solver.solve(root, MateSolver.DEFAULT_MAX_MOVES, MATE_SEARCH_MS);
+            SwingUtilities.invokeLater(() -> showMate(solver, root, fen, r));
+        }, "chess-mate");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.NORM_PRIORITY - 1);
+        worker.start();
+    }
+
+    private void showMate(MateSolver solver, ChessGame root, String fen, MateSolver.Result r) {
+        if (mateSolver != solver) return;
+        mateSolver = null;
+        mateButton.setText("Find Mate");
+        if (!fen.equals(mateFen)) return;
+        String side = root.toMove.equals("white") ? "White" : "Black";
+        if (r.isMate()) {
+            analysisInfoLabel.setText(String.format("%s mates in %d%s  %,d nodes", side, r.mateIn,
+                    r.complete ? "" : " or less", r.nodes));
+            analysisArea.setLineWrap(true);
+            analysisArea.setWrapStyleWord(true);
+            analysisArea.setText(Analyzer.pvToSan(root, r.line));
+            analysisArea.setCaretPosition(0);
+        } else {
+            analysisInfoLabel.setText(r.complete
+                    ? String.format("No mate for %s in %d moves", side, MateSolver.DEFAULT_MAX_MOVES)
+                    : String.format("No mate found in %d s", MATE_SEARCH_MS / 1000));
+        }
+    }
+
+    private void stopMateSearch() {
+        if (mateSolver != null) {
+            mateSolver.stop();
+            mateSolver = null;
+            mateButton.setText("Find Mate");
+        }
+        mateFen = null;
+    }
+
+    /**
+     * Shows the newest finished iteration. Runs on a timer, so however fast the
+     * search iterates the panel is redrawn at most every {@link #ANALYSIS_REFRESH_MS}.
+     */
+    private void showAnalysis() {
+        Analyzer.Snapshot snapshot = analyzer.poll();
+        if (snapshot == null || !snapshot.fen.equals(analyzedFen)) return;
+        analysisInfoLabel.setText(String.format("Depth %d  %,d nodes  %,d n/s",
+                snapshot.depth, snapshot.nodes, snapshot.nodesPerSecond()));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < snapshot.lines.length; i++) {
+            if (i > 0) sb.append('\n');
+            sb.append(String.format("%6s  %s", Analyzer.formatScore(snapshot.scores[i]), snapshot.lines[i]));
+        }
+        analysisArea.setText(sb.toString());
+        analysisArea.setCaretPosition(0);
+        showSearchStats();
+    }
+    
+    /**
+     * Shows the counters of the last finished search in the debug card, if enabled.
+     */
+    private void showSearchStats() {
+        if (searchStatsArea == null) return;
+        SearchStats s = SearchMetrics.INSTANCE.getLast();
+        if (s == null) {
+            searchStatsArea.setText("No search yet");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("depth %d  %,d nodes  %d ms%n", s.depth, s.nodes, s.elapsedMillis()));
+        sb.append(String.format("%,d n/s  EBF %.2f%n", s.nodesPerSecond(), s.effectiveBranchingFactor()));
+        sb.append(String.format("cutoffs %.1f%%  first move %.1f%%%n",
+                s.betaCutoffRate() * 100, s.firstMoveCutoffRate() * 100));
+        sb.append(s.ttProbes == 0 ? "TT n/a" : String.format("TT hits %.1f%%", s.ttHitRate() * 100));
+        for (int d = Math.max(1, s.depth - 2); d <= s.depth; d++) {
+            if (s.nodesAtDepth[d] == 0) continue;
+            sb.append(String.format("%n  d%-2d %,12d  %8.1f ms", d, s.nodesAtDepth[d], s.nanosAtDepth[d] / 1e6));
+        }
+        searchStatsArea.setText(sb.toString());
+    }
+    
+    private JButton createStyledButton(String text) {
+        JButton button = new JButton(text);
+        button.setBackground(CARD_BG);
+        button.setForeground(TEXT_PRIMARY);
+        button.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        button.setFocusPainted(false);
+        button.setBorder(BorderFactory.createLineBorder(BORDER_COLOR));
+        return button;
+    }
+    
     private JPanel createCard() {
         JPanel card = new JPanel();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
@@ -425,6 +1505,30 @@ public class ChessMain extends JPanel {
         return label;
     }
     
+    private void updateLatencyLabel() {
+        if (latencyLabel == null || globalNetwork == null) return;
+        if (globalNetwork.isReconnecting()) {
+            latencyLabel.setText("Reconnecting...");
+            latencyLabel.setForeground(new Color(220, 20, 60));
+            return;
+        }
+        long rtt = globalNetwork.getLastRttMicros();
+        long silence = globalNetwork.getSilenceMillis();
+        if (rtt < 0) {
+            latencyLabel.setText("Latency: --");
+            return;
+        }
+        long p99 = globalNetwork.getRttHistogram().getValueAtPercentile(99);
+        latencyLabel.setText(String.format("Latency: %.1f ms (p99 %.1f ms)", rtt / 1000.0, p99 / 1000.0));
+        if (silence > 2 * GlobalNetwork.HEARTBEAT_INTERVAL_MS || rtt > 300_000) {
+            latencyLabel.setForeground(new Color(220, 20, 60));
+        } else if (rtt > 100_000) {
+            latencyLabel.setForeground(Color.ORANGE);
+        } else {
+            latencyLabel.setForeground(ACCENT_COLOR);
+        }
+    }
+    
     private void updateSidePanel() {
         if (turnLabel != null) {
             String currentPlayer = game.toMove.equals("white") ? "White" : "Black";
@@ -445,7 +1549,7 @@ public class ChessMain extends JPanel {
                     statusLabel.setText("Checkmate!");
                     statusLabel.setForeground(new Color(220, 20, 60));
                 } else {
-                    statusLabel.setText("Stalemate");
+                    statusLabel.setText(describeGameOver(status));
                     statusLabel.setForeground(Color.ORANGE);
                 }
             } else if (game.isInCheck(game.toMove)) {
@@ -456,6 +1560,14 @@ public class ChessMain extends JPanel {
                 statusLabel.setForeground(TEXT_PRIMARY);
             }
         }
+        
+        if (explorerLabel != null) {
+            PositionDatabase.Entry entry = positionDb.lookup(game);
+            explorerLabel.setText(entry == null ? "Not reached before" : entry.toString());
+        }
+        
+        showSearchStats();
+        updateAnalysis();
     }
 
     // -----------------------------------------------------------------
@@ -464,7 +1576,7 @@ public class ChessMain extends JPanel {
     private class EnhancedMouseHandler extends MouseAdapter {
         @Override
         public void mousePressed(MouseEvent e) {
-            if (playWithGlobalFriend && !isMyTurn) {
+            if (playWithGlobalFriend && (!isMyTurn || globalNetwork.isReconnecting())) {
                 return;
             }
             
@@ -476,8 +1588,10 @@ public class ChessMain extends JPanel {
         
         @Override
         public void mouseExited(MouseEvent e) {
-            hoverSquare = null;
-            repaint();
+            if (hoverSquare != null) {
+                repaintSquare(hoverSquare.x, hoverSquare.y);
+                hoverSquare = null;
+            }
         }
     }
     
@@ -486,15 +1600,17 @@ public class ChessMain extends JPanel {
         public void mouseMoved(MouseEvent e) {
             Point newHover = pixelToSquare(e.getX(), e.getY());
             if (!Objects.equals(hoverSquare, newHover)) {
+                if (hoverSquare != null) repaintSquare(hoverSquare.x, hoverSquare.y);
                 hoverSquare = newHover;
-                repaint();
+                if (hoverSquare != null) repaintSquare(hoverSquare.x, hoverSquare.y);
             }
         }
     }
     
     private Point pixelToSquare(int x, int y) {
-        int col = x / TILE_SIZE;
-        int row = y / TILE_SIZE;
+        if (x < boardX || y < boardY) return null;
+        int col = (x - boardX) / tileSize;
+        int row = (y - boardY) / tileSize;
         if (col >= 0 && col < 8 && row >= 0 && row < 8) {
             if (isBlackPerspective) {
                 row = 7 - row;
@@ -514,7 +1630,7 @@ public class ChessMain extends JPanel {
             if (piece != null && piece.color.equals(game.toMove)) {
                 selectedSquare = new int[]{row, col};
                 legalMoves = game.getLegalMovesForPiece(row, col);
-                repaint();
+                repaintSelection();
             }
         } else {
             boolean foundMove = false;
@@ -529,6 +1645,7 @@ public class ChessMain extends JPanel {
                 executeMove(selectedSquare[0], selectedSquare[1], row, col);
             } else {
                 // Try to select a different piece
+                repaintSelection();
                 Piece piece = game.board[row][col];
                 if (piece != null && piece.color.equals(game.toMove)) {
                     selectedSquare = new int[]{row, col};
@@ -537,8 +1654,8 @@ public class ChessMain extends JPanel {
                     selectedSquare = null;
                     legalMoves = new ArrayList<>();
                 }
+                repaintSelection();
             }
-            repaint();
         }
     }
     
@@ -546,19 +1663,24 @@ public class ChessMain extends JPanel {
         // Record move for history
         String moveNotation = generateMoveNotation(fromX, fromY, toX, toY);
         
+        java.util.List<Point> dirty = moveDirtySquares(fromX, fromY, toX, toY);
+        repaintSelection();
+        
         // Start animation
         Piece movingPiece = game.board[fromX][fromY];
         if (movingPiece != null) {
-            currentAnimation = new PieceAnimation(
+            startAnimation(new PieceAnimation(
                 new Point(fromX, fromY), 
                 new Point(toX, toY), 
                 movingPiece, 
                 isBlackPerspective
-            );
+            ));
         }
         
         // Execute the move
         game.makeMove(fromX, fromY, toX, toY);
+        repaintSquares(dirty);
+        recordMove(fromX, fromY, toX, toY);
         
         // Add to move history
         moveHistory.add(moveNotation);
@@ -569,7 +1691,6 @@ public class ChessMain extends JPanel {
             try {
                 globalNetwork.sendMove(fromX, fromY, toX, toY);
                 isMyTurn = false;
-                startListeningForMoves(globalNetwork);
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(null,
                         "Failed to send move: " + ex.getMessage(),
@@ -586,13 +1707,107 @@ public class ChessMain extends JPanel {
     }
     
     private String generateMoveNotation(int fromX, int fromY, int toX, int toY) {
-        Piece piece = game.board[fromX][fromY];
-        if (piece == null) return "";
-        
-        String from = "" + (char)('a' + fromY) + (8 - fromX);
-        String to = "" + (char)('a' + toY) + (8 - toX);
-        
-        return piece.symbol().toUpperCase() + from + "-" + to;
+        return generateMoveNotation(game, fromX, fromY, toX, toY);
+    }
+    
+    private static String generateMoveNotation(ChessGame game, int fromX, int fromY, int toX, int toY) {
+        if (game.board[fromX][fromY] == null) return "";
+        return San.toSan(game, fromX, fromY, toX, toY, 'q');
+    }
+    
+    /**
+     * Builds a PGN record of the game so far.
+     */
+    private PgnGame toPgnGame() {
+        PgnGame pgn = new PgnGame();
+        pgn.setTag("Event", playWithComputer ? "Casual game vs Computer" : "Casual game");
+        pgn.setTag("Site", "Chess Master");
+        pgn.setTag("Date", new java.text.SimpleDateFormat("yyyy.MM.dd").format(new Date()));
+        pgn.setTag("Round", "-");
+        boolean hostIsWhite = !playWithGlobalFriend || globalNetwork == null || globalNetwork.isHost();
+        pgn.setTag("White", playWithGlobalFriend ? (hostIsWhite ? "Host" : "Guest") : "White");
+        pgn.setTag("Black", playWithComputer ? "Computer" : playWithGlobalFriend ? (hostIsWhite ? "Guest" : "Host") : "Black");
+        if (startFen != null) {
+            pgn.setTag("SetUp", "1");
+            pgn.setTag("FEN", startFen);
+        }
+        pgn.setResult(PgnGame.resultOf(game));
+        pgn.getMoves().addAll(moveHistory);
+        return pgn;
+    }
+    
+    private void savePgn() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("game.pgn"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try (PgnWriter writer = new PgnWriter(new BufferedWriter(new FileWriter(chooser.getSelectedFile())))) {
+            writer.write(toPgnGame());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not save game: " + e.getMessage(),
+                    "Save PGN", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    /**
+     * Replaces the current game with the first game of a PGN file.
+     */
+    private void loadPgn() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        PgnGame pgn;
+        ChessGame loaded;
+        String loadedFen;
+        java.util.List<int[]> moves;
+        try (PgnReader reader = PgnReader.open(chooser.getSelectedFile())) {
+            pgn = reader.next();
+            if (pgn == null) {
+                throw new IOException("no game found");
+            }
+            loaded = pgn.startingPosition();
+            loadedFen = loaded.toFen();
+            moves = pgn.replay(loaded);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Could not load game: " + e.getMessage(),
+                    "Load PGN", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (journal != null) {
+            try {
+                journal.finish("abandoned");
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+        game = loaded;
+        startFen = loadedFen.equals(new ChessGame().toFen()) ? null : loadedFen;
+        moveHistory.clear();
+        moveHistory.addAll(pgn.getMoves());
+        currentAnimation = null;
+        selectedSquare = null;
+        legalMoves = new ArrayList<>();
+        if (startFen == null) {
+            // Journals always start from the initial position
+            try {
+                journal = GameJournal.create(JOURNAL_DIR, playWithComputer ? 0 : 1, aiDifficulty);
+                ChessGame replay = new ChessGame();
+                for (int[] m : moves) {
+                    replay.makeMove(m[0], m[1], m[2], m[3], (char) m[4]);
+                    journal.appendMove(m[0], m[1], m[2], m[3], (char) m[4], replay);
+                }
+            } catch (IOException e) {
+                System.err.println("Game journal disabled: " + e.getMessage());
+            }
+        }
+        if (spectatorHub != null) {
+            spectatorHub.publishSnapshot(game.toFen());
+        }
+        updateMoveHistory();
+        updateSidePanel();
+        repaint();
+        checkGameOverState();
     }
     
     private void updateMoveHistory() {
@@ -619,6 +1834,8 @@ public class ChessMain extends JPanel {
     // -----------------------------------------------------------------
     @Override
     protected void paintComponent(Graphics g) {
+        ChessEvents.Paint event = new ChessEvents.Paint();
+        event.begin();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g.create();
         
@@ -627,13 +1844,70 @@ public class ChessMain extends JPanel {
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
 
-        drawBoard(g2d);
-        drawCoordinates(g2d);
+        renderScale = g2d.getTransform().getScaleX();
+        g2d.translate(boardX, boardY);
+        drawBoardLayer(g2d);
         drawPieces(g2d);
         drawHighlights(g2d);
-        drawBoardBorder(g2d);
         
         g2d.dispose();
+        event.end();
+        if (event.shouldCommit()) {
+            Rectangle clip = g.getClipBounds();
+            if (clip != null) {
+                event.clipWidth = clip.width;
+                event.clipHeight = clip.height;
+            }
+            event.animating = currentAnimation != null;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Blits the static board (tiles, coordinates, border), re-rendering it only
+     * when the cached image is missing or lost, or the perspective, size or
+     * display scale changed. The layer is rendered at device resolution.
+     */
+    private void drawBoardLayer(Graphics2D g2d) {
+        int boardSize = tileSize * 8;
+        int devicePixels = (int) Math.ceil(boardSize * renderScale);
+        String key = isBlackPerspective + "/" + tileSize + "@" + renderScale;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) {
+            // Not on screen, e.g. painting into an offscreen image: cache in a plain image instead
+            if (boardLayerImage == null || !key.equals(boardLayerKey)) {
+                boardLayerImage = new BufferedImage(devicePixels, devicePixels, BufferedImage.TYPE_INT_RGB);
+                renderBoardLayer(boardLayerImage.createGraphics(), g2d);
+                boardLayerKey = key;
+            }
+            g2d.drawImage(boardLayerImage, 0, 0, boardSize, boardSize, null);
+            return;
+        }
+        do {
+            int state = boardLayer == null ? VolatileImage.IMAGE_INCOMPATIBLE : boardLayer.validate(gc);
+            if (state == VolatileImage.IMAGE_INCOMPATIBLE || boardLayer.getWidth() != devicePixels) {
+                boardLayer = gc.createCompatibleVolatileImage(devicePixels, devicePixels);
+                boardLayerKey = null;
+            }
+            if (state != VolatileImage.IMAGE_OK || !key.equals(boardLayerKey)) {
+                renderBoardLayer(boardLayer.createGraphics(), g2d);
+                boardLayerKey = key;
+            }
+            g2d.drawImage(boardLayer, 0, 0, boardSize, boardSize, null);
+        } while (boardLayer.contentsLost());
+    }
+    
+    private void renderBoardLayer(Graphics2D lg, Graphics2D hintsFrom) {
+        lg.setRenderingHints(hintsFrom.getRenderingHints());
+        lg.scale(renderScale, renderScale);
+        paintBoardLayer(lg);
+        lg.dispose();
+    }
+    
+    private void paintBoardLayer(Graphics2D g2d) {
+        drawBoard(g2d);
+        drawCoordinates(g2d);
+        drawBoardBorder(g2d);
     }
     
     private void drawBoard(Graphics2D g2d) {
@@ -647,35 +1921,36 @@ public class ChessMain extends JPanel {
                 
                 // Create gradient for depth
                 GradientPaint gradient = new GradientPaint(
-                    drawCol * TILE_SIZE, drawRow * TILE_SIZE, baseColor.brighter(),
-                    drawCol * TILE_SIZE + TILE_SIZE, drawRow * TILE_SIZE + TILE_SIZE, baseColor.darker()
+                    drawCol * tileSize, drawRow * tileSize, baseColor.brighter(),
+                    drawCol * tileSize + tileSize, drawRow * tileSize + tileSize, baseColor.darker()
                 );
                 g2d.setPaint(gradient);
-                g2d.fillRect(drawCol * TILE_SIZE, drawRow * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                g2d.fillRect(drawCol * tileSize, drawRow * tileSize, tileSize, tileSize);
                 
                 // Add subtle inner shadow for depth
                 g2d.setColor(new Color(0, 0, 0, 20));
-                g2d.drawRect(drawCol * TILE_SIZE, drawRow * TILE_SIZE, TILE_SIZE - 1, TILE_SIZE - 1);
+                g2d.drawRect(drawCol * tileSize, drawRow * tileSize, tileSize - 1, tileSize - 1);
             }
         }
     }
     
     private void drawCoordinates(Graphics2D g2d) {
         g2d.setColor(new Color(100, 100, 100, 150));
-        g2d.setFont(new Font("Arial", Font.BOLD, 12));
+        g2d.setFont(new Font("Arial", Font.BOLD, Math.max(10, tileSize * 12 / TILE_SIZE)));
         FontMetrics fm = g2d.getFontMetrics();
+        int boardSize = tileSize * 8;
         
         for (int i = 0; i < 8; i++) {
             // Files (a-h)
             char file = isBlackPerspective ? (char)('h' - i) : (char)('a' + i);
             String fileStr = String.valueOf(file);
-            int x = i * TILE_SIZE + TILE_SIZE/2 - fm.stringWidth(fileStr)/2;
-            g2d.drawString(fileStr, x, BOARD_SIZE - 5);
+            int x = i * tileSize + tileSize/2 - fm.stringWidth(fileStr)/2;
+            g2d.drawString(fileStr, x, boardSize - 5);
             
             // Ranks (1-8)
             int rank = isBlackPerspective ? i + 1 : 8 - i;
             String rankStr = String.valueOf(rank);
-            g2d.drawString(rankStr, 5, i * TILE_SIZE + TILE_SIZE/2 + fm.getAscent()/2);
+            g2d.drawString(rankStr, 5, i * tileSize + tileSize/2 + fm.getAscent()/2);
         }
     }
     
@@ -685,7 +1960,7 @@ public class ChessMain extends JPanel {
             int drawRow = isBlackPerspective ? 7 - hoverSquare.x : hoverSquare.x;
             int drawCol = isBlackPerspective ? 7 - hoverSquare.y : hoverSquare.y;
             g2d.setColor(HOVER_COLOR);
-            g2d.fillRect(drawCol * TILE_SIZE, drawRow * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            g2d.fillRect(drawCol * tileSize, drawRow * tileSize, tileSize, tileSize);
         }
         
         // Selected square
@@ -694,12 +1969,12 @@ public class ChessMain extends JPanel {
             int drawCol = isBlackPerspective ? 7 - selectedSquare[1] : selectedSquare[1];
             
             g2d.setColor(SELECTED_COLOR);
-            g2d.fillRect(drawCol * TILE_SIZE, drawRow * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            g2d.fillRect(drawCol * tileSize, drawRow * tileSize, tileSize, tileSize);
             
             // Animated border for selected square
             g2d.setStroke(new BasicStroke(3.0f));
             g2d.setColor(new Color(70, 130, 180, 200));
-            g2d.drawRect(drawCol * TILE_SIZE + 1, drawRow * TILE_SIZE + 1, TILE_SIZE - 3, TILE_SIZE - 3);
+            g2d.drawRect(drawCol * tileSize + 1, drawRow * tileSize + 1, tileSize - 3, tileSize - 3);
         }
         
         // Legal moves with smooth circles
@@ -708,19 +1983,20 @@ public class ChessMain extends JPanel {
                 int drawRow = isBlackPerspective ? 7 - mv[0] : mv[0];
                 int drawCol = isBlackPerspective ? 7 - mv[1] : mv[1];
                 
-                int centerX = drawCol * TILE_SIZE + TILE_SIZE/2;
-                int centerY = drawRow * TILE_SIZE + TILE_SIZE/2;
+                int centerX = drawCol * tileSize + tileSize/2;
+                int centerY = drawRow * tileSize + tileSize/2;
                 
                 // Larger circle for captures
                 boolean isCapture = game.board[mv[0]][mv[1]] != null;
-                int radius = isCapture ? 25 : 15;
+                int radius = (isCapture ? 25 : 15) * tileSize / TILE_SIZE;
+                int glow = Math.max(2, 3 * tileSize / TILE_SIZE);
                 
                 g2d.setColor(LEGAL_MOVE_COLOR);
                 g2d.fillOval(centerX - radius, centerY - radius, radius * 2, radius * 2);
                 
                 // Subtle glow effect
                 g2d.setColor(new Color(50, 205, 50, 60));
-                g2d.fillOval(centerX - radius - 3, centerY - radius - 3, (radius + 3) * 2, (radius + 3) * 2);
+                g2d.fillOval(centerX - radius - glow, centerY - radius - glow, (radius + glow) * 2, (radius + glow) * 2);
             }
         }
         
@@ -731,15 +2007,36 @@ public class ChessMain extends JPanel {
                 int drawRow = isBlackPerspective ? 7 - kingPos.x : kingPos.x;
                 int drawCol = isBlackPerspective ? 7 - kingPos.y : kingPos.y;
                 
-                // Pulsing red effect
+                // Pulsing red effect, kept moving by the check pulse timer
+                startCheckPulse();
                 long time = System.currentTimeMillis();
                 float alpha = 0.5f + 0.3f * (float) Math.sin(time * 0.01);
                 g2d.setColor(new Color(220, 20, 60, (int)(alpha * 255)));
-                g2d.fillRect(drawCol * TILE_SIZE, drawRow * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                g2d.fillRect(drawCol * tileSize, drawRow * tileSize, tileSize, tileSize);
             }
         }
     }
     
+    /**
+     * Starts repainting the checked king's square every {@link #CHECK_PULSE_MS}; the timer
+     * stops itself once the check is gone, so only a position in check costs wake-ups.
+     */
+    private void startCheckPulse() {
+        if (checkPulseTimer == null) {
+            checkPulseTimer = new javax.swing.Timer(CHECK_PULSE_MS, e -> {
+                Point king = game.isInCheck(game.toMove) ? findKing(game.toMove) : null;
+                if (king == null) {
+                    checkPulseTimer.stop();
+                    return;
+                }
+                repaintSquare(king.x, king.y);
+            });
+        }
+        if (!checkPulseTimer.isRunning()) {
+            checkPulseTimer.start();
+        }
+    }
+    
     private Point findKing(String color) {
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
@@ -753,30 +2050,36 @@ public class ChessMain extends JPanel {
     }
     
     private void drawPieces(Graphics2D g2d) {
+        // Until sprites for this size are rendered this is the previous set, stretched, or null
+        PieceSprites.SpriteSet set = pieceSprites.get(tileSize, renderScale);
+        if (set == null) {
+            StartupProfile.mark("firstFrame");
+        } else if (!StartupProfile.has("firstSpriteFrame")) {
+            StartupProfile.mark("firstFrame");
+            StartupProfile.mark("firstSpriteFrame");
+            StartupProfile.report();
+        }
+        
+        // Dirty-region repaints only need the squares under the clip
+        Rectangle clip = g2d.getClipBounds();
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
                 Piece piece = game.board[i][j];
-                if (piece != null) {
+                if (piece != null && (clip == null || clip.intersects(squareBounds(i, j)))) {
                     // Skip piece being animated
                     if (currentAnimation != null && 
                         currentAnimation.fromSquare.x == i && currentAnimation.fromSquare.y == j) {
                         continue;
                     }
                     
-                    String key = piece.color + "_" + piece.getClass().getSimpleName().toLowerCase();
-                    BufferedImage img = images.get(key);
-                    if (img != null) {
-                        int drawRow = isBlackPerspective ? 7 - i : i;
-                        int drawCol = isBlackPerspective ? 7 - j : j;
-                        
-                        // Add subtle shadow
-                        g2d.setColor(new Color(0, 0, 0, 30));
-                        g2d.fillOval(drawCol * TILE_SIZE + 12, drawRow * TILE_SIZE + 12, 
-                                   TILE_SIZE - 20, TILE_SIZE - 20);
-                        
-                        // Draw piece with smooth scaling
-                        g2d.drawImage(img, drawCol * TILE_SIZE + 5, drawRow * TILE_SIZE + 5, 
-                                    TILE_SIZE - 10, TILE_SIZE - 10, null);
+                    // Sprites carry their shadow and match the device resolution, so each piece is a single 1:1 blit
+                    BufferedImage sprite = set == null ? null : set.sprites[piece.spriteIndex()];
+                    int drawRow = isBlackPerspective ? 7 - i : i;
+                    int drawCol = isBlackPerspective ? 7 - j : j;
+                    if (sprite != null) {
+                        g2d.drawImage(sprite, drawCol * tileSize, drawRow * tileSize, tileSize, tileSize, null);
+                    } else {
+                        PieceGlyphs.draw(g2d, piece.spriteIndex(), drawCol * tileSize, drawRow * tileSize, tileSize);
                     }
                 }
             }
@@ -784,42 +2087,67 @@ public class ChessMain extends JPanel {
         
         // Draw animated piece
         if (currentAnimation != null) {
-            String key = currentAnimation.piece.color + "_" + 
-                        currentAnimation.piece.getClass().getSimpleName().toLowerCase();
-            BufferedImage img = images.get(key);
+            BufferedImage img = set == null ? null : set.pieces[currentAnimation.piece.spriteIndex()];
+            Point p = currentAnimation.position(tileSize);
+            int inset = tileSize * 5 / TILE_SIZE;
+            // Add glow effect during animation
+            g2d.setColor(ANIMATION_GLOW);
+            g2d.fillOval(p.x, p.y, tileSize, tileSize);
+            
             if (img != null) {
-                // Add glow effect during animation
-                g2d.setColor(new Color(255, 255, 255, 100));
-                g2d.fillOval(currentAnimation.currentPixel.x - 5, currentAnimation.currentPixel.y - 5,
-                           TILE_SIZE, TILE_SIZE);
-                
-                g2d.drawImage(img, currentAnimation.currentPixel.x, currentAnimation.currentPixel.y, 
-                            TILE_SIZE - 10, TILE_SIZE - 10, null);
+                g2d.drawImage(img, p.x + inset, p.y + inset, tileSize - 2 * inset, tileSize - 2 * inset, null);
+            } else {
+                PieceGlyphs.draw(g2d, currentAnimation.piece.spriteIndex(), p.x, p.y, tileSize);
             }
         }
     }
     
     private void drawBoardBorder(Graphics2D g2d) {
+        int boardSize = tileSize * 8;
         g2d.setStroke(new BasicStroke(2.0f));
         g2d.setColor(new Color(100, 100, 100));
-        g2d.drawRect(0, 0, BOARD_SIZE - 1, BOARD_SIZE - 1);
+        g2d.drawRect(0, 0, boardSize - 1, boardSize - 1);
         
         // Outer glow
         g2d.setColor(new Color(200, 200, 200, 50));
-        g2d.drawRect(-1, -1, BOARD_SIZE + 1, BOARD_SIZE + 1);
+        g2d.drawRect(-1, -1, boardSize + 1, boardSize + 1);
     }
 
     // -----------------------------------------------------------------
     // 12) Rest of the methods (game logic, AI, networking) - keeping existing logic
     // -----------------------------------------------------------------
+    /**
+     * @param state As returned by {@link ChessGame#isGameOver()}.
+     */
+    static String describeGameOver(String state) {
+        switch (state) {
+            case "checkmate": return "Checkmate";
+            case "stalemate": return "Stalemate";
+            case "repetition": return "Draw by repetition";
+            case "fifty-move": return "Draw by fifty-move rule";
+            default: return state;
+        }
+    }
+
     private void checkGameOverState() {
         String state = game.isGameOver();
         if (state != null) {
+            if (journal != null) {
+                try {
+                    journal.finish(state);
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close journal: " + e.getMessage());
+                }
+                journal = null;
+            }
             if (state.equals("checkmate")) {
                 System.out.println("Checkmate! " 
                     + (game.toMove.equals("black") ? "White" : "Black") + " wins!");
             } else if (state.equals("stalemate")) {
                 System.out.println("Stalemate! Draw.");
+            } else {
+                System.out.println(describeGameOver(state) + ".");
             }
         } else {
             // If playing with the computer and it's the computer's turn, trigger AI move
@@ -830,146 +2158,103 @@ public class ChessMain extends JPanel {
     }
 
     private void performComputerMove() {
-        int[][] move;
-        if (aiDifficulty == 0) {
-            move = pickRandomMove();
-        } else if (aiDifficulty == 1) {
-            move = computeBestMove(1);
-        } else {
-            move = computeBestMove(3);
-        }
+        engine.setPosition(game);
+        int[][] move = engine.move(aiDifficulty).move;
         if (move != null) {
+            moveHistory.add(generateMoveNotation(move[0][0], move[0][1], move[1][0], move[1][1]));
+            java.util.List<Point> dirty = moveDirtySquares(move[0][0], move[0][1], move[1][0], move[1][1]);
             game.makeMove(move[0][0], move[0][1], move[1][0], move[1][1]);
+            recordMove(move[0][0], move[0][1], move[1][0], move[1][1]);
+            updateMoveHistory();
+            updateSidePanel();
+            repaintSquares(dirty);
             selectedSquare = null;
             legalMoves.clear();
             checkGameOverState();
-            repaint();
         }
     }
 
-    private int[][] pickRandomMove() {
-        java.util.List<int[][]> moves = game.getAllLegalMoves("black");
-        if (moves.isEmpty()) return null;
-        return moves.get(new java.util.Random().nextInt(moves.size()));
-    }
-
-    private int[][] computeBestMove(int depth) {
-        java.util.List<int[][]> moves = game.getAllLegalMoves("black");
-        int bestScore = Integer.MIN_VALUE;
-        int[][] best = null;
-        for (int[][] mv : moves) {
-            ChessGame copy = game.deepCopy();
-            copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
-            int score = minimax(copy, depth - 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
-            if (score > bestScore) {
-                bestScore = score;
-                best = mv;
+    private void startListeningForMoves(GlobalNetwork globalNetwork) {
+        globalNetwork.startSession(new GlobalNetwork.Listener() {
+            @Override
+            public void onMove(int seq, int[] move) {
+                SwingUtilities.invokeLater(() -> {
+                    moveHistory.add(generateMoveNotation(move[0], move[1], move[2], move[3]));
+                    java.util.List<Point> dirty = moveDirtySquares(move[0], move[1], move[2], move[3]);
+                    game.makeMove(move[0], move[1], move[2], move[3]);
+                    recordMove(move[0], move[1], move[2], move[3]);
+                    repaintSquares(dirty);
+                    updateMoveHistory();
+                    updateSidePanel();
+                    checkGameOverState();
+                    isMyTurn = isMyColorToMove();
+                    try {
+                        globalNetwork.acknowledgeMove(seq);
+                    } catch (IOException ignored) {
+                        // a broken link is picked up by the reader and heartbeat
+                    }
+                });
             }
-        }
-        return best;
-    }
 
-    private int minimax(ChessGame g, int depth, int alpha, int beta) {
-        String state = g.isGameOver();
-        if (depth == 0 || state != null) {
-            if ("checkmate".equals(state)) {
-                return g.toMove.equals("black") ? Integer.MIN_VALUE + depth : Integer.MAX_VALUE - depth;
+            @Override
+            public void onSnapshot(String fen) {
+                SwingUtilities.invokeLater(() -> {
+                    game = ChessGame.fromFen(fen);
+                    if (spectatorHub != null) {
+                        spectatorHub.publishSnapshot(fen);
+                    }
+                    currentAnimation = null;
+                    selectedSquare = null;
+                    legalMoves = new ArrayList<>();
+                    moveHistory.add("{resynced}");
+                    updateMoveHistory();
+                    isMyTurn = isMyColorToMove();
+                    updateSidePanel();
+                    repaint();
+                });
             }
-            return evaluateBoard(g);
-        }
 
-        boolean maximizing = g.toMove.equals("black");
-        java.util.List<int[][]> moves = g.getAllLegalMoves(g.toMove);
-        if (maximizing) {
-            int max = Integer.MIN_VALUE;
-            for (int[][] mv : moves) {
-                ChessGame copy = g.deepCopy();
-                copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
-                int score = minimax(copy, depth - 1, alpha, beta);
-                max = Math.max(max, score);
-                alpha = Math.max(alpha, score);
-                if (beta <= alpha) break;
-            }
-            return max;
-        } else {
-            int min = Integer.MAX_VALUE;
-            for (int[][] mv : moves) {
-                ChessGame copy = g.deepCopy();
-                copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
-                int score = minimax(copy, depth - 1, alpha, beta);
-                min = Math.min(min, score);
-                beta = Math.min(beta, score);
-                if (beta <= alpha) break;
+            @Override
+            public String snapshotFen() {
+                return game.toFen();
             }
-            return min;
-        }
-    }
 
-    private int evaluateBoard(ChessGame g) {
-        int score = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece p = g.board[i][j];
-                if (p != null) {
-                    int val = pieceValue(p);
-                    score += p.color.equals("white") ? -val : val;
-                }
+            @Override
+            public void onLinkDown(String reason) {
+                SwingUtilities.invokeLater(() -> {
+                    System.err.println("Link to peer lost (" + reason + "), reconnecting...");
+                    updateLatencyLabel();
+                });
             }
-        }
-        return score;
-    }
 
-    private int pieceValue(Piece p) {
-        if (p instanceof Pawn) return 100;
-        if (p instanceof Knight || p instanceof Bishop) return 300;
-        if (p instanceof Rook) return 500;
-        if (p instanceof Queen) return 900;
-        return 0;
-    }
+            @Override
+            public void onReconnected() {
+                SwingUtilities.invokeLater(() -> {
+                    isMyTurn = isMyColorToMove();
+                    updateLatencyLabel();
+                });
+            }
 
-    private void startListeningForMoves(GlobalNetwork globalNetwork) {
-        new Thread(() -> {
-            try {
-                int[] move = globalNetwork.receiveMove();
-                if (move == null) {
-                    throw new IOException("Connection lost or invalid data.");
-                }
+            @Override
+            public void onConnectionLost(String reason) {
                 SwingUtilities.invokeLater(() -> {
-                    game.makeMove(move[0], move[1], move[2], move[3]);
-                    checkGameOverState();
-                    isMyTurn = true;
-                    repaint();
+                    JOptionPane.showMessageDialog(null, 
+                            "Connection lost: " + reason, 
+                            "Error", 
+                            JOptionPane.ERROR_MESSAGE
+                    );
+                    System.exit(0);
                 });
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, 
-                        "Connection lost: " + e.getMessage(), 
-                        "Error", 
-                        JOptionPane.ERROR_MESSAGE
-                );
-                System.exit(0);
             }
-        }).start();
+        });
+    }
+
+    private boolean isMyColorToMove() {
+        return game.toMove.equals(globalNetwork.isHost() ? "white" : "black");
     }
 
     void loadPieceImages() {
-        String[] names = {"pawn","rook","knight","bishop","queen","king"};
-        String[] colors = {"white","black"};
-        for (String c : colors) {
-            for (String n : names) {
-                String key = c + "_" + n;
-                try {
-                    BufferedImage img = ImageIO.read(new File("images/" + key + ".png"));
-                    Image scaled = img.getScaledInstance(TILE_SIZE - 10, TILE_SIZE - 10, Image.SCALE_SMOOTH);
-                    BufferedImage buffered = new BufferedImage(TILE_SIZE - 10, TILE_SIZE - 10, BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D g2 = buffered.createGraphics();
-                    g2.drawImage(scaled, 0, 0, null);
-                    g2.dispose();
-                    images.put(key, buffered);
-                } catch (IOException ex) {
-                    System.err.println("Failed to load image: " + key);
-                }
-            }
-        }
+        pieceSprites.loadSourcesAsync();
     }
 
     abstract static class Piece {
@@ -978,6 +2263,14 @@ public class ChessMain extends JPanel {
         Piece(String color) { this.color = color; }
         abstract java.util.List<int[]> getMoves(Piece[][] board, int x, int y);
         abstract String symbol();
+
+        /**
+         * @return 0-5 for white pawn, knight, bishop, rook, queen, king; 6-11 for black.
+         */
+        int spriteIndex() {
+            char c = symbol().charAt(0);
+            return "PNBRQKpnbrqk".indexOf(c);
+        }
     }
 
     static class Pawn extends Piece {
@@ -1000,11 +2293,10 @@ public class ChessMain extends JPanel {
                     }
                 }
                 // captures
-                for (int dy : new int[]{-1,1}) {
-                    int ny = y + dy;
-                    if (ny>=0 && ny<8 && board[forwardX][ny]!=null 
-                            && !board[forwardX][ny].color.equals(color)) {
-                        moves.add(new int[]{forwardX, ny});
+                for (int to : AttackTables.PAWN[direction < 0 ? 0 : 1][x*8+y]) {
+                    Piece target = board[to >> 3][to & 7];
+                    if (target != null && !target.color.equals(color)) {
+                        moves.add(new int[]{to >> 3, to & 7});
                     }
                 }
             }
@@ -1018,24 +2310,8 @@ public class ChessMain extends JPanel {
         String symbol() { return color.equals("white") ? "R":"r"; }
         @Override
         java.util.List<int[]> getMoves(Piece[][] board, int x, int y) {
-            java.util.List<int[]> moves = new ArrayList<>();
-            int[][] directions = {{1,0},{-1,0},{0,1},{0,-1}};
-            for (int[] d : directions) {
-                int dx = d[0], dy = d[1];
-                int nx = x+dx, ny = y+dy;
-                while(nx>=0 && nx<8 && ny>=0 && ny<8) {
-                    if (board[nx][ny]==null) {
-                        moves.add(new int[]{nx,ny});
-                    } else {
-                        if(!board[nx][ny].color.equals(color)) {
-                            moves.add(new int[]{nx,ny});
-                        }
-                        break;
-                    }
-                    nx+=dx; 
-                    ny+=dy;
-                }
-            }
+            java.util.List<int[]> moves = new ArrayList<>(14);
+            AttackTables.addRays(board, x*8+y, 0, 4, color, moves);
             return moves;
         }
     }
@@ -1046,15 +2322,8 @@ public class ChessMain extends JPanel {
         String symbol() { return color.equals("white")?"N":"n"; }
         @Override
         java.util.List<int[]> getMoves(Piece[][] board, int x, int y) {
-            java.util.List<int[]> moves = new ArrayList<>();
-            int[][] offsets = {{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
-            for (int[] off : offsets) {
-                int nx=x+off[0], ny=y+off[1];
-                if(nx>=0 && nx<8 && ny>=0 && ny<8) {
-                    if(board[nx][ny]==null || !board[nx][ny].color.equals(color))
-                        moves.add(new int[]{nx,ny});
-                }
-            }
+            java.util.List<int[]> moves = new ArrayList<>(8);
+            AttackTables.addSteps(board, AttackTables.KNIGHT[x*8+y], color, moves);
             return moves;
         }
     }
@@ -1065,24 +2334,8 @@ public class ChessMain extends JPanel {
         String symbol(){return color.equals("white")?"B":"b";}
         @Override
         java.util.List<int[]> getMoves(Piece[][] board, int x, int y) {
-            java.util.List<int[]> moves = new ArrayList<>();
-            int[][] directions = {{1,1},{1,-1},{-1,1},{-1,-1}};
-            for (int[] d : directions) {
-                int dx=d[0], dy=d[1];
-                int nx=x+dx, ny=y+dy;
-                while(nx>=0 && nx<8 && ny>=0 && ny<8) {
-                    if(board[nx][ny]==null) {
-                        moves.add(new int[]{nx,ny});
-                    } else {
-                        if(!board[nx][ny].color.equals(color)) {
-                            moves.add(new int[]{nx,ny});
-                        }
-                        break;
-                    }
-                    nx+=dx; 
-                    ny+=dy;
-                }
-            }
+            java.util.List<int[]> moves = new ArrayList<>(13);
+            AttackTables.addRays(board, x*8+y, 4, 8, color, moves);
             return moves;
         }
     }
@@ -1093,27 +2346,8 @@ public class ChessMain extends JPanel {
         String symbol(){return color.equals("white")?"Q":"q";}
         @Override
         java.util.List<int[]> getMoves(Piece[][] board, int x, int y) {
-            java.util.List<int[]> moves = new ArrayList<>();
-            int[][] directions = {
-                {1,0},{-1,0},{0,1},{0,-1},
-                {1,1},{1,-1},{-1,1},{-1,-1}
-            };
-            for (int[] d : directions) {
-                int dx=d[0], dy=d[1];
-                int nx=x+dx, ny=y+dy;
-                while(nx>=0 && nx<8 && ny>=0 && ny<8) {
-                    if(board[nx][ny]==null) {
-                        moves.add(new int[]{nx,ny});
-                    } else {
-                        if(!board[nx][ny].color.equals(color)) {
-                            moves.add(new int[]{nx,ny});
-                        }
-                        break;
-                    }
-                    nx+=dx; 
-                    ny+=dy;
-                }
-            }
+            java.util.List<int[]> moves = new ArrayList<>(27);
+            AttackTables.addRays(board, x*8+y, 0, 8, color, moves);
             return moves;
         }
     }
@@ -1124,18 +2358,8 @@ public class ChessMain extends JPanel {
         String symbol(){return color.equals("white")?"K":"k";}
         @Override
         java.util.List<int[]> getMoves(Piece[][] board, int x, int y) {
-            java.util.List<int[]> moves = new ArrayList<>();
-            int[][] offsets = {
-                {1,0},{-1,0},{0,1},{0,-1},
-                {1,1},{1,-1},{-1,1},{-1,-1}
-            };
-            for(int[] off: offsets) {
-                int nx=x+off[0], ny=y+off[1];
-                if(nx>=0 && nx<8 && ny>=0 && ny<8) {
-                    if(board[nx][ny]==null || !board[nx][ny].color.equals(color))
-                        moves.add(new int[]{nx,ny});
-                }
-            }
+            java.util.List<int[]> moves = new ArrayList<>(8);
+            AttackTables.addSteps(board, AttackTables.KING[x*8+y], color, moves);
             return moves;
         }
     }
@@ -1146,6 +2370,13 @@ public class ChessMain extends JPanel {
         int[] enPassantTarget = null; // (x, y)
         int halfmoveClock = 0;
         int fullmoveNumber = 1;
+        // Zobrist keys of the positions reached, the current one last; a ring long enough
+        // to reach back past the fifty-move limit. Created on the first move.
+        static final int KEY_HISTORY = 128;
+        private long[] keys;
+        private int keyCount;
+        // Hidden layer of the network evaluation, attached by Nnue on first use
+        Nnue.Accumulator nnue;
 
         ChessGame() {
             board = new Piece[8][8];
@@ -1200,9 +2431,203 @@ public class ChessMain extends JPanel {
             }
             cp.halfmoveClock = this.halfmoveClock;
             cp.fullmoveNumber = this.fullmoveNumber;
+            if (this.keys != null) {
+                cp.keys = this.keys.clone();
+                cp.keyCount = this.keyCount;
+            }
+            if (this.nnue != null) {
+                cp.nnue = this.nnue.copy();
+            }
             return cp;
         }
 
+        /**
+         * Serialises the position as FEN. Castling rights are derived from
+         * whether each king and its corner rooks are still unmoved.
+         */
+        String toFen() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                int empty = 0;
+                for (int j = 0; j < 8; j++) {
+                    Piece p = board[i][j];
+                    if (p == null) {
+                        empty++;
+                    } else {
+                        if (empty > 0) {
+                            sb.append(empty);
+                            empty = 0;
+                        }
+                        sb.append(p.symbol());
+                    }
+                }
+                if (empty > 0) sb.append(empty);
+                if (i < 7) sb.append('/');
+            }
+            sb.append(toMove.equals("white") ? " w " : " b ");
+            String castling = castlingRights();
+            sb.append(castling.isEmpty() ? "-" : castling);
+            sb.append(' ');
+            if (enPassantTarget == null) {
+                sb.append('-');
+            } else {
+                sb.append((char) ('a' + enPassantTarget[1])).append(8 - enPassantTarget[0]);
+            }
+            sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+            return sb.toString();
+        }
+
+        /**
+         * @return Castling rights as bits: 1 K, 2 Q, 4 k, 8 q.
+         */
+        int castlingMask() {
+            return (canStillCastle(7, 7) ? 1 : 0) | (canStillCastle(7, 0) ? 2 : 0)
+                    | (canStillCastle(0, 7) ? 4 : 0) | (canStillCastle(0, 0) ? 8 : 0);
+        }
+
+        String castlingRights() {
+            StringBuilder sb = new StringBuilder();
+            if (canStillCastle(7, 7)) sb.append('K');
+            if (canStillCastle(7, 0)) sb.append('Q');
+            if (canStillCastle(0, 7)) sb.append('k');
+            if (canStillCastle(0, 0)) sb.append('q');
+            return sb.toString();
+        }
+
+        private boolean canStillCastle(int row, int rookCol) {
+            String color = row == 7 ? "white" : "black";
+            Piece king = board[row][4];
+            Piece rook = board[row][rookCol];
+            return king instanceof King && !king.hasMoved && king.color.equals(color)
+                    && rook instanceof Rook && !rook.hasMoved && rook.color.equals(color);
+        }
+
+        /**
+         * Builds a game from a FEN string. Missing trailing fields default to
+         * no castling, no en passant and move 1.
+         * @throws IllegalArgumentException If the placement or side to move is malformed.
+         */
+        static ChessGame fromFen(String fen) {
+            String[] parts = fen.trim().split("\\s+");
+            String[] rows = parts[0].split("/");
+            if (parts.length < 2 || rows.length != 8) {
+                throw new IllegalArgumentException("Invalid FEN: " + fen);
+            }
+            ChessGame g = new ChessGame();
+            g.board = new Piece[8][8];
+            for (int i = 0; i < 8; i++) {
+                int j = 0;
+                for (char c : rows[i].toCharArray()) {
+                    if (Character.isDigit(c)) {
+                        j += c - '0';
+                    } else if (j < 8) {
+                        Piece p = pieceForSymbol(c);
+                        // Only the pieces that FEN castling rights speak for start out unmoved
+                        p.hasMoved = !(p instanceof Pawn);
+                        g.board[i][j++] = p;
+                    } else {
+                        throw new IllegalArgumentException("Invalid FEN rank: " + rows[i]);
+                    }
+                }
+                if (j != 8) {
+                    throw new IllegalArgumentException("Invalid FEN rank: " + rows[i]);
+                }
+            }
+            if (!parts[1].equals("w") && !parts[1].equals("b")) {
+                throw new IllegalArgumentException("Invalid side to move: " + parts[1]);
+            }
+            g.toMove = parts[1].equals("w") ? "white" : "black";
+            String castling = parts.length > 2 ? parts[2] : "-";
+            for (char c : castling.toCharArray()) {
+                int row = Character.isUpperCase(c) ? 7 : 0;
+                int rookCol = Character.toLowerCase(c) == 'k' ? 7 : Character.toLowerCase(c) == 'q' ? 0 : -1;
+                if (rookCol < 0) continue;
+                if (g.board[row][4] instanceof King) g.board[row][4].hasMoved = false;
+                if (g.board[row][rookCol] instanceof Rook) g.board[row][rookCol].hasMoved = false;
+            }
+            if (parts.length > 3 && !parts[3].equals("-") && parts[3].length() == 2) {
+                g.enPassantTarget = new int[]{8 - (parts[3].charAt(1) - '0'), parts[3].charAt(0) - 'a'};
+            }
+            try {
+                if (parts.length > 4) g.halfmoveClock = Integer.parseInt(parts[4]);
+                if (parts.length > 5) g.fullmoveNumber = Integer.parseInt(parts[5]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid FEN move counters: " + fen, e);
+            }
+            return g;
+        }
+
+        static Piece pieceForSymbol(char symbol) {
+            String color = Character.isUpperCase(symbol) ? "white" : "black";
+            switch (Character.toLowerCase(symbol)) {
+                case 'p': return new Pawn(color);
+                case 'n': return new Knight(color);
+                case 'b': return new Bishop(color);
+                case 'r': return new Rook(color);
+                case 'q': return new Queen(color);
+                case 'k': return new King(color);
+                default: throw new IllegalArgumentException("Unknown piece symbol: " + symbol);
+            }
+        }
+
+        /**
+         * Static exchange evaluation: the material the mover gains on (toX, toY) if both
+         * sides keep recapturing there with their cheapest piece, each stopping as soon as
+         * going on would lose. Pins and checks elsewhere are ignored.
+         * @return Centipawns for the side making the move; negative for a losing capture.
+         */
+        int staticExchange(int fromX, int fromY, int toX, int toY) {
+            Piece mover = board[fromX][fromY];
+            Piece victim = board[toX][toY];
+            int epX = -1;
+            if (victim == null && mover instanceof Pawn && fromY != toY) {
+                // En passant: the captured pawn stands beside the mover
+                epX = fromX;
+                victim = board[fromX][toY];
+                board[fromX][toY] = null;
+            }
+            int[] gain = new int[32];
+            int[] liftedSquares = new int[32];
+            Piece[] liftedPieces = new Piece[32];
+            int lifted = 0;
+            int d = 0;
+            gain[0] = victim == null ? 0 : exchangeValue(victim);
+            Piece onSquare = mover;
+            liftedSquares[lifted] = fromX * 8 + fromY;
+            liftedPieces[lifted++] = mover;
+            board[fromX][fromY] = null;
+            String side = mover.color.equals("white") ? "black" : "white";
+            while (d < gain.length - 1) {
+                int from = AttackTables.leastValuableAttacker(board, toX, toY, side);
+                if (from < 0) break;
+                d++;
+                gain[d] = exchangeValue(onSquare) - gain[d - 1];
+                if (Math.max(-gain[d - 1], gain[d]) < 0) break;
+                onSquare = board[from >> 3][from & 7];
+                liftedSquares[lifted] = from;
+                liftedPieces[lifted++] = onSquare;
+                board[from >> 3][from & 7] = null;
+                side = side.equals("white") ? "black" : "white";
+            }
+            while (lifted > 0) {
+                lifted--;
+                board[liftedSquares[lifted] >> 3][liftedSquares[lifted] & 7] = liftedPieces[lifted];
+            }
+            if (epX >= 0) {
+                board[epX][toY] = victim;
+            }
+            // Each side may also decline to recapture
+            for (; d > 0; d--) {
+                gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+            }
+            return gain[0];
+        }
+
+        // The king is worth more than anything it could win, so it only recaptures last
+        private static int exchangeValue(Piece p) {
+            return p instanceof King ? 10_000 : Evaluation.pieceValue(p);
+        }
+
         boolean isInCheck(String color) {
             int[] kingPos = null;
             for (int i=0; i<8; i++){
@@ -1220,18 +2645,12 @@ public class ChessMain extends JPanel {
             return squareAttackedBy(kingPos[0], kingPos[1], enemyColor);
         }
 
+        /**
+         * Whether a piece of {@code color} attacks (x, y). Pawns attack diagonally whether or
+         * not the square is occupied, and never by pushing.
+         */
         boolean squareAttackedBy(int x,int y,String color){
-            for(int i=0;i<8;i++){
-                for(int j=0;j<8;j++){
-                    Piece p=board[i][j];
-                    if(p!=null && p.color.equals(color)){
-                        for(int[] mv:getLegalMovesForPiece(i,j,true)){
-                            if(mv[0]==x && mv[1]==y) return true;
-                        }
-                    }
-                }
-            }
-            return false;
+            return AttackTables.isAttacked(board, x, y, color);
         }
 
         java.util.List<int[]> getLegalMovesForPiece(int x,int y){
@@ -1371,6 +2790,44 @@ public class ChessMain extends JPanel {
         }
 
         void makeMove(int fromX, int fromY, int toX, int toY) {
+            makeMove(fromX, fromY, toX, toY, 'q');
+        }
+
+        /**
+         * Applies a move, promoting a pawn that reaches the last rank to the
+         * piece named by {@code promotion} (one of q, r, b, n).
+         */
+        void makeMove(int fromX, int fromY, int toX, int toY, char promotion) {
+            ChessEvents.MoveApplied event = new ChessEvents.MoveApplied();
+            event.begin();
+            recordStartKey();
+            // Update the key and the network incrementally: only these squares and the state part change
+            int[] touched = touchedSquares(fromX, fromY, toX, toY);
+            long key = keys[(keyCount - 1) % KEY_HISTORY] ^ Zobrist.stateKey(this);
+            for (int sq : touched) {
+                Piece p = board[sq >> 3][sq & 7];
+                if (p == null) continue;
+                key ^= Zobrist.square(this, sq >> 3, sq & 7);
+                if (nnue != null) nnue.remove(p, sq >> 3, sq & 7);
+            }
+            applyMove(fromX, fromY, toX, toY, promotion);
+            for (int sq : touched) {
+                Piece p = board[sq >> 3][sq & 7];
+                if (p == null) continue;
+                key ^= Zobrist.square(this, sq >> 3, sq & 7);
+                if (nnue != null) nnue.add(p, sq >> 3, sq & 7);
+            }
+            key ^= Zobrist.stateKey(this);
+            keys[keyCount++ % KEY_HISTORY] = key;
+            event.end();
+            if (event.shouldCommit()) {
+                event.from = San.square(fromX, fromY);
+                event.to = San.square(toX, toY);
+                event.commit();
+            }
+        }
+
+        private void applyMove(int fromX, int fromY, int toX, int toY, char promotion) {
             Piece piece=board[fromX][fromY];
             Piece target=board[toX][toY];
 
@@ -1402,7 +2859,13 @@ public class ChessMain extends JPanel {
             // Pawn promotion
             if(piece instanceof Pawn) {
                 if((piece.color.equals("white") && toX==0)||(piece.color.equals("black") && toX==7)){
-                    board[toX][toY]=new Queen(piece.color);
+                    Piece promoted = pieceForSymbol(Character.toLowerCase(promotion));
+                    if (promoted instanceof Pawn || promoted instanceof King) {
+                        promoted = new Queen(piece.color);
+                    }
+                    promoted.color = piece.color;
+                    promoted.hasMoved = true;
+                    board[toX][toY]=promoted;
                 }
             }
 
@@ -1428,6 +2891,78 @@ public class ChessMain extends JPanel {
             }
         }
 
+        /**
+         * Passes the turn, as the search's null move does. The repetition window restarts
+         * here, since positions on either side of a pass are not a real repetition.
+         */
+        void makeNullMove() {
+            recordStartKey();
+            long stateBefore = Zobrist.stateKey(this);
+            enPassantTarget = null;
+            halfmoveClock = 0;
+            if (toMove.equals("white")) {
+                toMove = "black";
+            } else {
+                toMove = "white";
+                fullmoveNumber++;
+            }
+            long key = keys[(keyCount - 1) % KEY_HISTORY] ^ stateBefore ^ Zobrist.stateKey(this);
+            keys[keyCount++ % KEY_HISTORY] = key;
+        }
+
+        /**
+         * @return The squares (x * 8 + y) a move can change: its own two, plus the rook's
+         *         for castling or the captured pawn's for en passant.
+         */
+        private int[] touchedSquares(int fromX, int fromY, int toX, int toY) {
+            Piece mover = board[fromX][fromY];
+            int from = fromX * 8 + fromY, to = toX * 8 + toY;
+            if (mover instanceof King && Math.abs(toY - fromY) == 2) {
+                return toY > fromY
+                        ? new int[]{from, to, fromX * 8 + 7, fromX * 8 + 5}
+                        : new int[]{from, to, fromX * 8, fromX * 8 + 3};
+            }
+            if (mover instanceof Pawn && fromY != toY && board[toX][toY] == null) {
+                return new int[]{from, to, fromX * 8 + toY};
+            }
+            return new int[]{from, to};
+        }
+
+        /**
+         * @return The Zobrist key of the current position.
+         */
+        long key() {
+            recordStartKey();
+            return keys[(keyCount - 1) % KEY_HISTORY];
+        }
+
+        private void recordStartKey() {
+            if (keys == null) {
+                keys = new long[KEY_HISTORY];
+                keys[keyCount++] = Zobrist.hash(this);
+            }
+        }
+
+        /**
+         * Counts earlier occurrences of the current position. Only positions since the
+         * last capture or pawn move can match, so at most {@code halfmoveClock} keys are checked.
+         */
+        int repetitionCount() {
+            if (keys == null) return 0;
+            long current = keys[(keyCount - 1) % KEY_HISTORY];
+            int back = Math.min(halfmoveClock, Math.min(keyCount - 1, KEY_HISTORY - 1));
+            int count = 0;
+            // The same side is to move only every other ply
+            for (int i = 4; i <= back; i += 2) {
+                if (keys[(keyCount - 1 - i) % KEY_HISTORY] == current) count++;
+            }
+            return count;
+        }
+
+        /**
+         * @return One of "checkmate", "stalemate", "repetition" (threefold) or
+         *         "fifty-move", or null while the game goes on.
+         */
         String isGameOver(){
             String color=toMove;
             java.util.List<int[][]> allMoves=getAllLegalMoves(color);
@@ -1435,6 +2970,8 @@ public class ChessMain extends JPanel {
                 if(isInCheck(color)) return "checkmate";
                 else return "stalemate";
             }
+            if (halfmoveClock >= 100) return "fifty-move";
+            if (repetitionCount() >= 2) return "repetition";
             return null;
         }
 
@@ -0,0 +1,353 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The engine as a library, for servers and tools as well as the board.
+ *
+ * <pre>
+ *   Engine.Session s = Engine.newSession();
+ *   s.setPosition(Engine.START_FEN);
+ *   s.play("e2e4");
+ *   Engine.Result r = s.search(Search.Limits.depth(8).millis(500), info -&gt; log(info.pv));
+ *   s.play(r.bestMove);
+ * </pre>
+ *
+ * Moves go in and out as UCI strings and positions as FEN. Nothing on the way loads
+ * {@link ChessMain} itself or any AWT or Swing class: the model lives in classes nested
+ * in ChessMain, but a nested class loads without its outer one. The shared parts are
+ * immutable or synchronised (move tables, Zobrist keys, evaluation weights, the network,
+ * {@link SearchMetrics}), so any number of sessions can search at once.
+ * A session is safe to use from several threads. It runs one search at a time; a
+ * second search while one is running is an error, and {@link Session#stop()} may
+ * come from any thread.
+ */
+public final class Engine {
+
+    static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /** Computer opponent levels, as offered in the game's difficulty choice. */
+    static final int LEVEL_EASY = 0;   // a random legal move
+    static final int LEVEL_MEDIUM = 1; // depth 1
+    static final int LEVEL_HARD = 2;   // depth 3
+
+    private Engine() {
+    }
+
+    public static Session newSession() {
+        return new Session(new Search.Options());
+    }
+
+    /**
+     * @param options Search switches and evaluator for every search in the session.
+     */
+    public static Session newSession(Search.Options options) {
+        return new Session(options);
+    }
+
+    /**
+     * The search limits for a computer opponent level; {@link #LEVEL_EASY} has none,
+     * as it plays a random move.
+     */
+    static Search.Limits levelLimits(int level) {
+        return Search.Limits.depth(level == LEVEL_MEDIUM ? 1 : 3);
+    }
+
+    /**
+     * Progress of a search after one completed iteration.
+     */
+    static class Info {
+        final int depth;
+        /** Centipawns for the side to move; see {@link #mateIn} for mates. */
+        final int score;
+        /** Moves to mate, negative if the side to move is mated; 0 if no mate is seen. */
+        final int mateIn;
+        final long nodes;
+        final long elapsedMillis;
+        /** The principal variation in UCI, best move first. */
+        final java.util.List<String> pv;
+
+        Info(int depth, int score, long nodes, long elapsedMillis, java.util.List<String> pv) {
+            this.depth = depth;
+            this.score = score;
+            this.mateIn = Math.abs(score) >= Search.MATE_SCORE - Search.MAX_PLY
+                    ? Integer.signum(score) * ((Search.MATE_SCORE - Math.abs(score) + 1) / 2) : 0;
+            this.nodes = nodes;
+            this.elapsedMillis = elapsedMillis;
+            this.pv = pv;
+        }
+    }
+
+    /**
+     * The outcome of a search.
+     */
+    static class Result extends Info {
+        /** The move to play in UCI, or null if the side to move has no legal move. */
+        final String bestMove;
+        /** The same move as {{fromX, fromY}, {toX, toY}}, for callers holding a {@link ChessMain.ChessGame}. */
+        final int[][] move;
+
+        Result(String bestMove, int[][] move, int depth, int score, long nodes, long elapsedMillis,
+               java.util.List<String> pv) {
+            super(depth, score, nodes, elapsedMillis, pv);
+            this.bestMove = bestMove;
+            this.move = move;
+        }
+    }
+
+    /**
+     * Receives progress from a search, on the searching thread.
+     */
+    interface Listener {
+        void onInfo(Info info);
+    }
+
+    /**
+     * One game or analysis: a position and at most one search on it at a time.
+     */
+    static final class Session {
+        private final Search.Options options;
+        // Null while hibernating, when the game is in slot of store
+        private ChessMain.ChessGame position = ChessMain.ChessGame.fromFen(START_FEN);
+        private GameStore store;
+        private int slot;
+        private long lastUsedMillis = System.currentTimeMillis();
+        private Search running;
+
+        private Session(Search.Options options) {
+            this.options = options;
+        }
+
+        /**
+         * @throws IllegalArgumentException If {@code fen} is not a valid position.
+         */
+        synchronized void setPosition(String fen) {
+            ChessMain.ChessGame g = ChessMain.ChessGame.fromFen(fen);
+            release();
+            position = g;
+        }
+
+        /**
+         * Copies {@code g}, history included, so repetitions before it count.
+         */
+        synchronized void setPosition(ChessMain.ChessGame g) {
+            release();
+            position = g.deepCopy();
+        }
+
+        /**
+         * Plays a move in UCI form, e.g. "e2e4" or "e7e8n".
+         * @throws IllegalArgumentException If the move is malformed or illegal here.
+         */
+        synchronized void play(String uci) {
+            ChessMain.ChessGame g = position();
+            int[] mv = parseUci(g, uci);
+            g.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+        }
+
+        synchronized String fen() {
+            return position().toFen();
+        }
+
+        synchronized java.util.List<String> legalMoves() {
+            ChessMain.ChessGame g = position();
+            java.util.List<String> moves = new ArrayList<>();
+            for (int[][] mv : g.getAllLegalMoves(g.toMove)) {
+                moves.add(San.toUci(g, mv[0][0], mv[0][1], mv[1][0], mv[1][1], 'q'));
+            }
+            return moves;
+        }
+
+        /**
+         * @return As {@link ChessMain.ChessGame#isGameOver()}: null while the game goes on.
+         */
+        synchronized String gameOver() {
+            return position().isGameOver();
+        }
+
+        /**
+         * Searches the current position on the calling thread. The position may change
+         * meanwhile; the search works on a copy.
+         * @param listener Told of each completed iteration; may be null.
+         * @throws IllegalStateException If this session is already searching.
+         */
+        Result search(Search.Limits limits, Listener listener) {
+            ChessMain.ChessGame root;
+            Search s = new Search(options);
+            synchronized (this) {
+                if (running != null) {
+                    throw new IllegalStateException("This session is already searching");
+                }
+                running = s;
+                root = position().deepCopy();
+            }
+            try {
+                Search.Result r = s.search(root, limits, 1,
+                        listener == null ? null : it -> listener.onInfo(toResult(root, it)));
+                return toResult(root, r);
+            } finally {
+                synchronized (this) {
+                    running = null;
+                }
+            }
+        }
+
+        /**
+         * As {@link #search}, on a thread of the {@link SearchScheduler#shared() shared scheduler},
+         * which may shorten the search when busy.
+         */
+        CompletableFuture<Result> searchAsync(Search.Limits limits, Listener listener) {
+            return SearchScheduler.shared().submit(this, limits, Long.MAX_VALUE, listener);
+        }
+
+        /**
+         * As {@link #searchAsync(Search.Limits, Listener)} for a game with {@code clockMillis}
+         * left on its clock: the lower the clock, the sooner the search starts and the shorter it is.
+         */
+        CompletableFuture<Result> searchAsync(Search.Limits limits, long clockMillis, Listener listener) {
+            return SearchScheduler.shared().submit(this, limits, clockMillis, listener);
+        }
+
+        /**
+         * The computer opponent's move at {@code level}, one of the LEVEL constants.
+         */
+        Result move(int level) {
+            if (level != LEVEL_EASY) {
+                return search(levelLimits(level), null);
+            }
+            ChessMain.ChessGame root;
+            synchronized (this) {
+                root = position().deepCopy();
+            }
+            java.util.List<int[][]> moves = root.getAllLegalMoves(root.toMove);
+            if (moves.isEmpty()) {
+                return new Result(null, null, 0, 0, 0, 0, Collections.emptyList());
+            }
+            int[][] mv = moves.get(ThreadLocalRandom.current().nextInt(moves.size()));
+            String uci = San.toUci(root, mv[0][0], mv[0][1], mv[1][0], mv[1][1], 'q');
+            return new Result(uci, mv, 0, 0, 0, 0, Collections.singletonList(uci));
+        }
+
+        /**
+         * As {@link #move}, through the shared scheduler; see {@link #searchAsync(Search.Limits, long, Listener)}.
+         */
+        CompletableFuture<Result> moveAsync(int level, long clockMillis) {
+            if (level == LEVEL_EASY) {
+                return CompletableFuture.completedFuture(move(level));
+            }
+            return searchAsync(levelLimits(level), clockMillis, null);
+        }
+
+        /**
+         * Moves the position into {@code store} if the session has not been used for
+         * {@code idleMillis} and is not searching. It comes back on the next call that needs
+         * it, without the history of earlier positions: see {@link GameSnapshot}.
+         * @return Whether the position is now in a store.
+         */
+        synchronized boolean hibernate(GameStore store, long idleMillis) {
+            if (position == null) return true;
+            if (running != null || System.currentTimeMillis() - lastUsedMillis < idleMillis) return false;
+            slot = store.put(position);
+            this.store = store;
+            position = null;
+            return true;
+        }
+
+        /**
+         * The position, brought back from the store if hibernating. Called holding the lock.
+         */
+        private ChessMain.ChessGame position() {
+            lastUsedMillis = System.currentTimeMillis();
+            if (position == null) {
+                position = store.take(slot);
+                store = null;
+            }
+            return position;
+        }
+
+        /**
+         * Drops a hibernating position without reading it back. Called holding the lock.
+         */
+        private void release() {
+            lastUsedMillis = System.currentTimeMillis();
+            if (position == null) {
+                store.remove(slot);
+                store = null;
+            }
+        }
+
+        /**
+         * Asks the running search, if any, to return its best move so far.
+         */
+        void stop() {
+            Search s;
+            synchronized (this) {
+                s = running;
+            }
+            if (s != null) s.stop();
+        }
+    }
+
+    private static Result toResult(ChessMain.ChessGame root, Search.Result r) {
+        java.util.List<String> pv = new ArrayList<>();
+        if (!r.lines.isEmpty()) {
+            ChessMain.ChessGame g = root.deepCopy();
+            for (int[][] mv : r.lines.get(0).pv) {
+                pv.add(San.toUci(g, mv[0][0], mv[0][1], mv[1][0], mv[1][1], 'q'));
+                g.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            }
+        }
+        int[][] best = r.bestMove;
+        String uci = best == null ? null : San.toUci(root, best[0][0], best[0][1], best[1][0], best[1][1], 'q');
+        return new Result(uci, best, r.depth, r.score, r.nodes, r.elapsedMillis, Collections.unmodifiableList(pv));
+    }
+
+    /**
+     * @return {fromX, fromY, toX, toY, promotion} of the legal move {@code uci} names.
+     */
+    static int[] parseUci(ChessMain.ChessGame g, String uci) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            throw new IllegalArgumentException("Not a UCI move: " + uci);
+        }
+        int fromY = uci.charAt(0) - 'a', fromX = '8' - uci.charAt(1);
+        int toY = uci.charAt(2) - 'a', toX = '8' - uci.charAt(3);
+        char promotion = uci.length() == 5 ? Character.toLowerCase(uci.charAt(4)) : 'q';
+        if ("qrbn".indexOf(promotion) < 0) {
+            throw new IllegalArgumentException("Not a UCI move: " + uci);
+        }
+        for (int[][] mv : g.getAllLegalMoves(g.toMove)) {
+            if (mv[0][0] == fromX && mv[0][1] == fromY && mv[1][0] == toX && mv[1][1] == toY) {
+                return new int[]{fromX, fromY, toX, toY, promotion};
+            }
+        }
+        throw new IllegalArgumentException("Illegal move " + uci + " in " + g.toFen());
+    }
+
+    /**
+     * Prints the best move for a position, without loading any AWT class.
+     * Usage: java Engine "fen" [--depth D] [--movetime MS]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java Engine \"fen\" [--depth D] [--movetime MS]");
+            System.exit(2);
+        }
+        Search.Limits limits = Search.Limits.depth(Search.MAX_PLY).millis(1000);
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--depth": limits.depth = Integer.parseInt(args[i + 1]); break;
+                case "--movetime": limits.millis(Long.parseLong(args[i + 1])); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        Session session = newSession();
+        session.setPosition(args[0]);
+        Result r = session.search(limits, info -> System.out.printf("info depth %d score %s nodes %d time %d pv %s%n",
+                info.depth, info.mateIn != 0 ? "mate " + info.mateIn : "cp " + info.score,
+                info.nodes, info.elapsedMillis, String.join(" ", info.pv)));
+        System.out.println("bestmove " + (r.bestMove == null ? "(none)" : r.bestMove));
+    }
+}
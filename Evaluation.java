@@ -0,0 +1,177 @@
+import java.io.*;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Static evaluation for the engine.
+ *
+ * The evaluation is linear: a weight per term times how often the term occurs for white,
+ * minus for black. The terms are the five piece values and a piece-square bonus for each
+ * piece type on each square, seen from its own side. The piece-square weights start
+ * at zero, leaving pure material, until {@link Tuner} fits them. Weights load at
+ * startup from the file named by {@code -Dchess.eval.weights}, default
+ * {@value #WEIGHTS_FILE} if it exists. Terms missing from the file keep their defaults.
+ */
+public final class Evaluation {
+
+    static final String WEIGHTS_FILE = "eval.weights";
+
+    private static final String PIECE_NAMES = "PNBRQK";
+    static final int MATERIAL = 0;
+    /** Index of the piece-square term for piece type t (0-5, pawn to king) on square sq, from its own side. */
+    static final int PSQT = 5;
+    static final int TERMS = PSQT + 6 * 64;
+
+    /** Term weights in centipawns; read-only once loaded. */
+    private static final int[] WEIGHTS = defaultWeights();
+
+    static {
+        String file = System.getProperty("chess.eval.weights", WEIGHTS_FILE);
+        if (new File(file).isFile()) {
+            try {
+                // Parse the whole file before touching the live weights, so a bad line
+                // leaves the defaults in place rather than a mix
+                int[] loaded = defaultWeights();
+                readWeights(new File(file), loaded);
+                System.arraycopy(loaded, 0, WEIGHTS, 0, TERMS);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Evaluation weights not loaded: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A static evaluation the search can plug in.
+     */
+    interface Evaluator {
+        /**
+         * @return Centipawns from the point of view of the side to move.
+         */
+        int evaluate(ChessMain.ChessGame g);
+    }
+
+    /** The handcrafted evaluation below. */
+    static final Evaluator HANDCRAFTED = Evaluation::evaluateRelative;
+
+    private static Evaluator defaultEvaluator;
+
+    private Evaluation() {}
+
+    /**
+     * The evaluator new searches use: the network named by {@code -Dchess.nnue=<file>},
+     * or the handcrafted evaluation if none is set or it cannot be loaded.
+     */
+    static synchronized Evaluator defaultEvaluator() {
+        if (defaultEvaluator == null) {
+            defaultEvaluator = HANDCRAFTED;
+            String net = System.getProperty("chess.nnue");
+            if (net != null) {
+                try {
+                    defaultEvaluator = Nnue.load(new java.io.File(net));
+                } catch (java.io.IOException e) {
+                    System.err.println("Network not loaded, using the handcrafted evaluation: " + e.getMessage());
+                }
+            }
+        }
+        return defaultEvaluator;
+    }
+
+    static int pieceValue(ChessMain.Piece p) {
+        int type = Zobrist.pieceIndex(p) % 6;
+        return type == 5 ? 0 : WEIGHTS[MATERIAL + type];
+    }
+
+    /**
+     * Evaluation from black's point of view, the side the computer plays.
+     */
+    static int evaluate(ChessMain.ChessGame g) {
+        int score = 0;
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                ChessMain.Piece p = g.board[i][j];
+                if (p != null) {
+                    int piece = Zobrist.pieceIndex(p);
+                    int type = piece % 6;
+                    boolean white = piece < 6;
+                    int val = (type == 5 ? 0 : WEIGHTS[MATERIAL + type]) + WEIGHTS[psqt(type, i, j, white)];
+                    score += white ? -val : val;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return The piece-square term for a piece of {@code type} on (x, y); black's squares
+     *         are mirrored so both sides share the table.
+     */
+    static int psqt(int type, int x, int y, boolean white) {
+        return PSQT + type * 64 + (white ? x : 7 - x) * 8 + y;
+    }
+
+    static int[] weights() {
+        return WEIGHTS.clone();
+    }
+
+    static int[] defaultWeights() {
+        int[] w = new int[TERMS];
+        w[MATERIAL] = 100;
+        w[MATERIAL + 1] = 300;
+        w[MATERIAL + 2] = 300;
+        w[MATERIAL + 3] = 500;
+        w[MATERIAL + 4] = 900;
+        return w;
+    }
+
+    /**
+     * @return Term names as used in weight files: "value.N", "psqt.N.e4" and so on.
+     */
+    static String termName(int term) {
+        if (term < PSQT) return "value." + PIECE_NAMES.charAt(term - MATERIAL);
+        int t = term - PSQT;
+        int sq = t % 64;
+        return "psqt." + PIECE_NAMES.charAt(t / 64) + "." + (char) ('a' + sq % 8) + (8 - sq / 8);
+    }
+
+    /**
+     * Reads "name value" lines into {@code weights}; blank lines and lines starting with # are skipped.
+     * @throws IllegalArgumentException On an unknown term or a malformed line.
+     */
+    static void readWeights(File file, int[] weights) throws IOException {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < TERMS; i++) index.put(termName(i), i);
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                Integer term = index.get(parts[0]);
+                if (term == null || parts.length != 2) {
+                    throw new IllegalArgumentException(file + ":" + lineNo + ": bad weight line: " + line);
+                }
+                weights[term] = Integer.parseInt(parts[1]);
+            }
+        }
+    }
+
+    static void writeWeights(File file, int[] weights, String comment) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("# " + comment);
+            for (int i = 0; i < TERMS; i++) {
+                out.println(String.format(Locale.ROOT, "%s %d", termName(i), weights[i]));
+            }
+        }
+    }
+
+    /**
+     * Evaluation from the point of view of the side to move, as negamax expects.
+     */
+    static int evaluateRelative(ChessMain.ChessGame g) {
+        int score = evaluate(g);
+        return g.toMove.equals("black") ? score : -score;
+    }
+}
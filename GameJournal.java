@@ -0,0 +1,293 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe, append-only journal of a single game, backed by a memory-mapped file.
+ *
+ * Layout: a 16-byte header (magic, version, opponent choice, AI difficulty, start time)
+ * followed by records of the form {@code [type][length][payload][crc32]}. A record's
+ * type byte is written last, so a torn write leaves a zero byte that ends the scan.
+ * Writes land in the OS page cache and survive a JVM crash without an fsync;
+ * the mapping is forced to disk at every checkpoint.
+ *
+ * Records: a move is two bytes (from square, to square and promotion packed into a short),
+ * a checkpoint is the ply count plus a FEN, and an end record marks the game as finished.
+ */
+public class GameJournal implements Closeable {
+
+    private static final int MAGIC = 0x43484A31; // "CHJ1"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    static final byte REC_MOVE = 1;
+    static final byte REC_CHECKPOINT = 2;
+    static final byte REC_END = 3;
+
+    static final String SUFFIX = ".jnl";
+
+    // Promotion piece by its 2-bit index in a move record
+    private static final String PROMOTIONS = "qrbn";
+
+    // Plies between position checkpoints, overridable with -Dchess.journal.checkpointEvery
+    static final int CHECKPOINT_EVERY = Integer.getInteger("chess.journal.checkpointEvery", 20);
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private final CRC32 crc = new CRC32();
+    private int ply;
+
+    /**
+     * A game found on disk that never got an end record.
+     */
+    static class Recovered {
+        final File file;
+        final int opponentChoice;
+        final int aiDifficulty;
+        final long startedMillis;
+        /** Every move from the initial position, as {fromX, fromY, toX, toY, promotion}. */
+        final java.util.List<int[]> moves;
+        /** Position after the last move, restored from the newest checkpoint. */
+        final ChessMain.ChessGame game;
+
+        Recovered(File file, int opponentChoice, int aiDifficulty, long startedMillis,
+                  java.util.List<int[]> moves, ChessMain.ChessGame game) {
+            this.file = file;
+            this.opponentChoice = opponentChoice;
+            this.aiDifficulty = aiDifficulty;
+            this.startedMillis = startedMillis;
+            this.moves = moves;
+            this.game = game;
+        }
+    }
+
+    private GameJournal(File file, boolean create, int opponentChoice, int aiDifficulty) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        long size = Math.max(INITIAL_CAPACITY, channel.size());
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (create) {
+            map.putInt(MAGIC).putShort(VERSION)
+                    .put((byte) opponentChoice).put((byte) aiDifficulty)
+                    .putLong(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Starts a journal for a new game.
+     * @param dir Journal directory, created if missing.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    static GameJournal create(File dir, int opponentChoice, int aiDifficulty) throws IOException {
+        Files.createDirectories(dir.toPath());
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File f = new File(dir, "game-" + stamp + "-" + Integer.toHexString(new Random().nextInt(0x10000)) + SUFFIX);
+        return new GameJournal(f, true, opponentChoice, aiDifficulty);
+    }
+
+    /**
+     * Continues appending to a recovered journal.
+     */
+    static GameJournal reopen(Recovered recovered) throws IOException {
+        GameJournal j = new GameJournal(recovered.file, false, 0, 0);
+        j.map.position(scanEnd(j.map));
+        j.ply = recovered.moves.size();
+        return j;
+    }
+
+    /**
+     * Appends a move; every {@link #CHECKPOINT_EVERY} plies the resulting position is checkpointed.
+     * @param after The game after the move was applied.
+     */
+    void appendMove(int fromX, int fromY, int toX, int toY, ChessMain.ChessGame after) throws IOException {
+        appendMove(fromX, fromY, toX, toY, 'q', after);
+    }
+
+    /**
+     * Appends a move with an explicit promotion piece (q, r, b or n).
+     */
+    void appendMove(int fromX, int fromY, int toX, int toY, char promotion, ChessMain.ChessGame after) throws IOException {
+        int promo = Math.max(0, PROMOTIONS.indexOf(Character.toLowerCase(promotion)));
+        int packed = (promo << 12) | (fromX << 9) | (fromY << 6) | (toX << 3) | toY;
+        byte[] payload = {(byte) (packed >>> 8), (byte) packed};
+        append(REC_MOVE, payload);
+        ply++;
+        if (ply % CHECKPOINT_EVERY == 0) {
+            checkpoint(after);
+        }
+    }
+
+    void checkpoint(ChessMain.ChessGame game) throws IOException {
+        byte[] fen = game.toFen().getBytes(StandardCharsets.US_ASCII);
+        byte[] payload = new byte[4 + fen.length];
+        payload[0] = (byte) (ply >>> 24);
+        payload[1] = (byte) (ply >>> 16);
+        payload[2] = (byte) (ply >>> 8);
+        payload[3] = (byte) ply;
+        System.arraycopy(fen, 0, payload, 4, fen.length);
+        append(REC_CHECKPOINT, payload);
+        map.force();
+    }
+
+    /**
+     * Marks the game as finished so it is no longer offered for recovery.
+     * @param result Free-form result such as "checkmate" or "abandoned".
+     */
+    void finish(String result) throws IOException {
+        append(REC_END, result.getBytes(StandardCharsets.US_ASCII));
+        map.force();
+    }
+
+    private void append(byte type, byte[] payload) throws IOException {
+        int recordSize = 2 + payload.length + 4;
+        if (map.remaining() < recordSize + 1) {
+            grow();
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.length);
+        crc.update(payload, 0, payload.length);
+        int start = map.position();
+        map.put(start + 1, (byte) payload.length);
+        for (int i = 0; i < payload.length; i++) {
+            map.put(start + 2 + i, payload[i]);
+        }
+        map.putInt(start + 2 + payload.length, (int) crc.getValue());
+        // The type byte makes the record visible, so it goes in last
+        map.put(start, type);
+        map.position(start + recordSize);
+    }
+
+    private void grow() throws IOException {
+        int pos = map.position();
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) map.capacity() * 2);
+        map.position(pos);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.force();
+        channel.close();
+        raf.close();
+    }
+
+    /**
+     * Walks the records of a mapped journal and returns the offset just past the last valid one.
+     */
+    private static int scanEnd(MappedByteBuffer buf) {
+        int pos = HEADER_SIZE;
+        while (true) {
+            int next = nextRecord(buf, pos);
+            if (next < 0) return pos;
+            pos = next;
+        }
+    }
+
+    /**
+     * @return The offset of the record after the one at {@code pos}, or -1 if there is no valid record there.
+     */
+    private static int nextRecord(ByteBuffer buf, int pos) {
+        if (pos + 2 > buf.limit()) return -1;
+        byte type = buf.get(pos);
+        if (type != REC_MOVE && type != REC_CHECKPOINT && type != REC_END) return -1;
+        int len = buf.get(pos + 1) & 0xFF;
+        if (pos + 2 + len + 4 > buf.limit()) return -1;
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(len);
+        for (int i = 0; i < len; i++) {
+            crc.update(buf.get(pos + 2 + i));
+        }
+        if ((int) crc.getValue() != buf.getInt(pos + 2 + len)) return -1;
+        return pos + 2 + len + 4;
+    }
+
+    /**
+     * Reads a journal. Returns null for finished, foreign or unreadable files.
+     */
+    static Recovered recover(File f) {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            if (ch.size() < HEADER_SIZE) return null;
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt(0) != MAGIC || buf.getShort(4) != VERSION) return null;
+            int opponent = buf.get(6);
+            int difficulty = buf.get(7);
+            long started = buf.getLong(8);
+
+            java.util.List<int[]> moves = new ArrayList<>();
+            String checkpointFen = null;
+            int checkpointPly = 0;
+            int pos = HEADER_SIZE;
+            int next;
+            while ((next = nextRecord(buf, pos)) >= 0) {
+                byte type = buf.get(pos);
+                int len = buf.get(pos + 1) & 0xFF;
+                if (type == REC_END) {
+                    return null;
+                } else if (type == REC_MOVE) {
+                    int packed = ((buf.get(pos + 2) & 0xFF) << 8) | (buf.get(pos + 3) & 0xFF);
+                    moves.add(new int[]{(packed >> 9) & 7, (packed >> 6) & 7, (packed >> 3) & 7, packed & 7,
+                            PROMOTIONS.charAt((packed >> 12) & 3)});
+                } else {
+                    byte[] fen = new byte[len - 4];
+                    for (int i = 0; i < fen.length; i++) {
+                        fen[i] = buf.get(pos + 6 + i);
+                    }
+                    checkpointPly = buf.getInt(pos + 2);
+                    checkpointFen = new String(fen, StandardCharsets.US_ASCII);
+                }
+                pos = next;
+            }
+
+            // Jump to the newest checkpoint and replay only the tail
+            ChessMain.ChessGame game;
+            int replayFrom;
+            if (checkpointFen != null && checkpointPly <= moves.size()) {
+                game = ChessMain.ChessGame.fromFen(checkpointFen);
+                replayFrom = checkpointPly;
+            } else {
+                game = new ChessMain.ChessGame();
+                replayFrom = 0;
+            }
+            for (int i = replayFrom; i < moves.size(); i++) {
+                int[] m = moves.get(i);
+                game.makeMove(m[0], m[1], m[2], m[3], (char) m[4]);
+            }
+            return new Recovered(f, opponent, difficulty, started, moves, game);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Skipping unreadable journal " + f.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lists the unfinished games in a journal directory, newest first.
+     */
+    static java.util.List<Recovered> findUnfinished(File dir) {
+        java.util.List<Recovered> result = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return result;
+        Arrays.sort(files, Comparator.comparing(File::getName).reversed());
+        for (File f : files) {
+            Recovered r = recover(f);
+            if (r != null) result.add(r);
+        }
+        return result;
+    }
+}
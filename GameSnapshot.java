@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary form of a {@link ChessMain.ChessGame}, for keeping many idle games off the heap.
+ *
+ * <pre>
+ *   0  long   occupied squares, bit x * 8 + y
+ *   8  16     piece codes, 4 bits each, in square order (high nibble first):
+ *             1-6 white PNBRQK, 9-14 black pnbrqk
+ *   24 byte   castling rights as {@link ChessMain.ChessGame#castlingMask()}, plus 16 if black is to move
+ *   25 byte   en passant target x * 8 + y + 1, or 0 for none
+ *   26 short  halfmove clock, unsigned
+ *   28 short  fullmove number, unsigned
+ * </pre>
+ * A snapshot holds what a FEN holds and restores as {@link ChessMain.ChessGame#fromFen} would:
+ * the history of earlier positions is not kept, so repetitions from before it do not count.
+ */
+final class GameSnapshot {
+
+    static final int SIZE = 30;
+
+    private static final String SYMBOLS = "PNBRQK";
+    private static final int MAX_PIECES = 32;
+
+    private GameSnapshot() {
+    }
+
+    static byte[] encode(ChessMain.ChessGame g) {
+        byte[] b = new byte[SIZE];
+        write(g, ByteBuffer.wrap(b), 0);
+        return b;
+    }
+
+    static ChessMain.ChessGame decode(byte[] b) {
+        if (b.length != SIZE) {
+            throw new IllegalArgumentException("Snapshot of " + b.length + " bytes, expected " + SIZE);
+        }
+        return read(ByteBuffer.wrap(b), 0);
+    }
+
+    /**
+     * Writes {@code g} at {@code offset} without moving the buffer's position.
+     * @throws IllegalArgumentException If the board has more than 32 pieces.
+     */
+    static void write(ChessMain.ChessGame g, ByteBuffer buf, int offset) {
+        long occupied = 0;
+        byte[] codes = new byte[MAX_PIECES / 2];
+        int n = 0;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                ChessMain.Piece p = g.board[x][y];
+                if (p == null) continue;
+                if (n == MAX_PIECES) {
+                    throw new IllegalArgumentException("More than " + MAX_PIECES + " pieces: " + g.toFen());
+                }
+                occupied |= 1L << (x * 8 + y);
+                int code = SYMBOLS.indexOf(p.symbol().toUpperCase()) + 1 + (p.color.equals("white") ? 0 : 8);
+                codes[n >> 1] |= (byte) ((n & 1) == 0 ? code << 4 : code);
+                n++;
+            }
+        }
+        buf.putLong(offset, occupied);
+        for (int i = 0; i < codes.length; i++) {
+            buf.put(offset + 8 + i, codes[i]);
+        }
+        buf.put(offset + 24, (byte) (g.castlingMask() | (g.toMove.equals("white") ? 0 : 16)));
+        int[] ep = g.enPassantTarget;
+        buf.put(offset + 25, (byte) (ep == null ? 0 : ep[0] * 8 + ep[1] + 1));
+        buf.putShort(offset + 26, (short) Math.min(g.halfmoveClock, 0xFFFF));
+        buf.putShort(offset + 28, (short) Math.min(g.fullmoveNumber, 0xFFFF));
+    }
+
+    /**
+     * Reads a snapshot at {@code offset} without moving the buffer's position.
+     * @throws IllegalArgumentException If the bytes are not a snapshot.
+     */
+    static ChessMain.ChessGame read(ByteBuffer buf, int offset) {
+        long occupied = buf.getLong(offset);
+        if (Long.bitCount(occupied) > MAX_PIECES) {
+            throw new IllegalArgumentException("Corrupt snapshot: " + Long.bitCount(occupied) + " pieces");
+        }
+        ChessMain.ChessGame g = new ChessMain.ChessGame();
+        g.board = new ChessMain.Piece[8][8];
+        int n = 0;
+        for (long bits = occupied; bits != 0; bits &= bits - 1, n++) {
+            int sq = Long.numberOfTrailingZeros(bits);
+            int b = buf.get(offset + 8 + (n >> 1));
+            int code = ((n & 1) == 0 ? b >> 4 : b) & 15;
+            int kind = (code & 7) - 1;
+            if (kind < 0 || kind >= SYMBOLS.length()) {
+                throw new IllegalArgumentException("Corrupt snapshot: piece code " + code);
+            }
+            char symbol = SYMBOLS.charAt(kind);
+            ChessMain.Piece p = ChessMain.ChessGame.pieceForSymbol(code < 8 ? symbol : Character.toLowerCase(symbol));
+            // As in fromFen, only the pieces that castling rights speak for start out unmoved
+            p.hasMoved = !(p instanceof ChessMain.Pawn);
+            g.board[sq >> 3][sq & 7] = p;
+        }
+        int flags = buf.get(offset + 24);
+        g.toMove = (flags & 16) == 0 ? "white" : "black";
+        for (int right = 0; right < 4; right++) {
+            if ((flags & (1 << right)) == 0) continue;
+            int row = right < 2 ? 7 : 0;
+            int rookCol = (right & 1) == 0 ? 7 : 0;
+            if (g.board[row][4] instanceof ChessMain.King) g.board[row][4].hasMoved = false;
+            if (g.board[row][rookCol] instanceof ChessMain.Rook) g.board[row][rookCol].hasMoved = false;
+        }
+        int ep = buf.get(offset + 25) & 0xFF;
+        if (ep > 64) {
+            throw new IllegalArgumentException("Corrupt snapshot: en passant square " + (ep - 1));
+        }
+        if (ep != 0) {
+            g.enPassantTarget = new int[]{(ep - 1) >> 3, (ep - 1) & 7};
+        }
+        g.halfmoveClock = buf.getShort(offset + 26) & 0xFFFF;
+        g.fullmoveNumber = buf.getShort(offset + 28) & 0xFFFF;
+        return g;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Idle games as {@link GameSnapshot}s in fixed slots outside the heap, either in a
+ * memory-mapped file or in direct buffers. A game costs 32 bytes here, against a few
+ * kilobytes as a live {@link ChessMain.ChessGame}, and the caller keeps only its slot number.
+ *
+ * Layout of a file store: a 32-byte header (magic, version, slot size), then 32-byte slots
+ * of a state byte (0 free, 1 in use) followed by the snapshot. The state byte is written
+ * after the snapshot, so a torn write leaves a free slot. The file grows in
+ * {@link #SEGMENT_SLOTS}-slot segments, each mapped separately, and reopening it keeps the
+ * games in it at their slot numbers.
+ */
+public class GameStore implements Closeable {
+
+    private static final int MAGIC = 0x43484753; // "CHGS"
+    private static final int VERSION = 1;
+    static final int SLOT_SIZE = 32;
+    private static final int HEADER_SIZE = SLOT_SIZE;
+    static final int SEGMENT_SLOTS = 1 << 20;
+
+    private static final byte FREE = 0;
+    private static final byte IN_USE = 1;
+
+    private final FileChannel channel;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    // Free slots below the high-water mark, used before new ones
+    private int[] free = new int[64];
+    private int freeCount;
+    private int slotCount;
+    private int used;
+
+    private GameStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * A store in direct buffers, gone when the process ends.
+     */
+    static GameStore offHeap() {
+        return new GameStore(null);
+    }
+
+    /**
+     * Opens or creates a store backed by {@code file}.
+     * @throws IOException If the file cannot be mapped or is not a game store.
+     */
+    static GameStore open(File file) throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        GameStore store = new GameStore(ch);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).rewind();
+            channel.write(header, 0);
+            return;
+        }
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != SLOT_SIZE) {
+            throw new IOException("Not a game store");
+        }
+        long segmentBytes = (long) SEGMENT_SLOTS * SLOT_SIZE;
+        long segmentCount = (channel.size() - HEADER_SIZE + segmentBytes - 1) / segmentBytes;
+        for (long s = 0; s < segmentCount; s++) {
+            addSegment();
+        }
+        // Everything up to the last slot in use counts as allocated; the holes are free
+        int last = -1;
+        for (int slot = 0; slot < segments.size() * SEGMENT_SLOTS; slot++) {
+            if (state(slot) == IN_USE) last = slot;
+        }
+        slotCount = last + 1;
+        for (int slot = last; slot >= 0; slot--) {
+            if (state(slot) == IN_USE) {
+                used++;
+            } else {
+                pushFree(slot);
+            }
+        }
+    }
+
+    /**
+     * Stores a snapshot of {@code g}.
+     * @return The slot to pass to {@link #take} or {@link #get}.
+     * @throws IllegalArgumentException If {@code g} has more than 32 pieces.
+     * @throws UncheckedIOException If a file store cannot grow.
+     */
+    synchronized int put(ChessMain.ChessGame g) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (slotCount == segments.size() * SEGMENT_SLOTS) {
+                if (segments.size() == Integer.MAX_VALUE / SEGMENT_SLOTS) {
+                    throw new IllegalStateException("Game store is full");
+                }
+                try {
+                    addSegment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            slot = slotCount++;
+        }
+        ByteBuffer seg = segment(slot);
+        int offset = offset(slot);
+        try {
+            GameSnapshot.write(g, seg, offset + 1);
+        } catch (IllegalArgumentException e) {
+            pushFree(slot);
+            throw e;
+        }
+        seg.put(offset, IN_USE);
+        used++;
+        return slot;
+    }
+
+    /**
+     * The game in {@code slot}, which stays stored.
+     * @throws IllegalArgumentException If the slot holds no game.
+     */
+    synchronized ChessMain.ChessGame get(int slot) {
+        checkInUse(slot);
+        return GameSnapshot.read(segment(slot), offset(slot) + 1);
+    }
+
+    /**
+     * The game in {@code slot}, which is freed for reuse.
+     * @throws IllegalArgumentException If the slot holds no game.
+     */
+    synchronized ChessMain.ChessGame take(int slot) {
+        ChessMain.ChessGame g = get(slot);
+        remove(slot);
+        return g;
+    }
+
+    /**
+     * Frees {@code slot} without reading it.
+     * @throws IllegalArgumentException If the slot holds no game.
+     */
+    synchronized void remove(int slot) {
+        checkInUse(slot);
+        segment(slot).put(offset(slot), FREE);
+        pushFree(slot);
+        used--;
+    }
+
+    /**
+     * Games currently stored.
+     */
+    synchronized int size() {
+        return used;
+    }
+
+    /**
+     * Writes a file store's changes to disk; a no-op off-heap.
+     */
+    synchronized void force() {
+        if (channel == null) return;
+        for (ByteBuffer seg : segments) {
+            ((MappedByteBuffer) seg).force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        if (channel != null) channel.close();
+        segments.clear();
+    }
+
+    private void addSegment() throws IOException {
+        int bytes = SEGMENT_SLOTS * SLOT_SIZE;
+        if (channel == null) {
+            segments.add(ByteBuffer.allocateDirect(bytes));
+        } else {
+            long start = HEADER_SIZE + (long) segments.size() * bytes;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, bytes));
+        }
+    }
+
+    private void checkInUse(int slot) {
+        if (slot < 0 || slot >= slotCount || state(slot) != IN_USE) {
+            throw new IllegalArgumentException("No game in slot " + slot);
+        }
+    }
+
+    private byte state(int slot) {
+        return segment(slot).get(offset(slot));
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments.get(slot / SEGMENT_SLOTS);
+    }
+
+    private static int offset(int slot) {
+        return (slot % SEGMENT_SLOTS) * SLOT_SIZE;
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = slot;
+    }
+}
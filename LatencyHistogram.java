@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-footprint latency histogram in the style of HdrHistogram.
+ * Values (microseconds) are bucketed log-linearly: every power-of-two range is
+ * split into 64 sub-buckets, so any recorded value is reproduced within ~1.5%
+ * while the whole histogram stays a single array of counters.
+ * Recording is lock-free and may happen from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Creates a histogram tracking values up to one minute (in microseconds).
+     */
+    public LatencyHistogram() {
+        this(60_000_000L);
+    }
+
+    /**
+     * Creates a histogram tracking values up to the given bound.
+     * Larger values are clamped to the bound.
+     * @param highestTrackableValue The largest value that is recorded exactly.
+     */
+    public LatencyHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = Math.max(SUB_BUCKET_COUNT, highestTrackableValue);
+        this.counts = new AtomicLongArray(indexFor(this.highestTrackableValue) + 1);
+    }
+
+    /**
+     * Records a single value.
+     * @param value The value to record, negative values are treated as zero.
+     */
+    public void recordValue(long value) {
+        long v = Math.min(Math.max(0, value), highestTrackableValue);
+        counts.incrementAndGet(indexFor(v));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(v);
+        maxValue.accumulateAndGet(v, Math::max);
+        minValue.accumulateAndGet(v, Math::min);
+    }
+
+    private static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values fall.
+     * @param percentile Percentile in the range 0..100.
+     * @return The value at that percentile, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), getMaxValue());
+            }
+        }
+        return getMaxValue();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return totalCount.get() == 0 ? 0 : maxValue.get();
+    }
+
+    public long getMinValue() {
+        return totalCount.get() == 0 ? 0 : minValue.get();
+    }
+
+    public double getMean() {
+        long total = totalCount.get();
+        return total == 0 ? 0.0 : totalSum.get() / (double) total;
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+    }
+
+    /**
+     * Summarises the histogram as a JSON object.
+     * @return count, min, mean, max and the usual percentiles.
+     */
+    public String toJson() {
+        return String.format(java.util.Locale.ROOT,
+                "{\"count\":%d,\"min\":%d,\"mean\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                getTotalCount(), getMinValue(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMaxValue());
+    }
+}
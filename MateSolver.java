@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Depth-first proof-number (df-pn) search for forced mates.
+ *
+ * The side to move at the root is the attacker. Every position gets a proof number, the
+ * fewest leaves that must still be shown to be mates to prove it, and a disproof number,
+ * the fewest that must be shown to escape. The search always expands the most-proving
+ * node, so it goes deep where the defender has few replies. That is where long forced
+ * mates are, far beyond what the fixed-width alpha-beta reaches. Numbers are kept
+ * per position in a bounded transposition table; a node is revisited only when its
+ * thresholds are exceeded.
+ *
+ * A proven entry also records the plies to mate along its proof, and a disproven one the
+ * plies that were left when it was disproven. So an entry is reused only where it still
+ * holds: a mate that fits in the plies remaining, or an escape found with at least as
+ * many plies to spare. The first proof need not be the shortest, so the search is rerun
+ * with the limit just below the mate found until no shorter one is proven.
+ *
+ * Repetitions are not draws to the solver. The shortest mate never repeats a position,
+ * and without them an entry does not depend on the path that reached it, so a result
+ * proven on one path holds on every other. The fifty-move rule is ignored as well; it
+ * only matters when the position's clock is already high.
+ * An instance must not be shared between threads, except for {@link #stop()}.
+ *
+ * Usage: java MateSolver "fen" | positions.epd [--moves N] [--millis MS] [--hash MB]
+ */
+public class MateSolver {
+
+    static final int DEFAULT_HASH_MB = 16;
+    static final int DEFAULT_MAX_MOVES = 40;
+    static final int INFINITY = 100_000_000;
+
+    private static final int BUCKET = 4;
+    private static final int ENTRY_BYTES = 8 + 4 + 4 + 4 + 2;
+    // Depth of an escape that holds however many plies remain: stalemate, or the attacker mated
+    private static final int ALWAYS = Short.MAX_VALUE;
+
+    /**
+     * The outcome of one {@link #solve} call.
+     */
+    static class Result {
+        /** Moves to mate for the side to move, or 0 if no mate was found. */
+        final int mateIn;
+        /** The attacker's moves and the defender's longest replies, ending in mate; empty without a mate. */
+        final java.util.List<int[][]> line;
+        /**
+         * Whether the search finished: with a mate, no shorter one exists; without,
+         * there is no mate within the move limit that the table could see.
+         */
+        final boolean complete;
+        final long nodes;
+        final long elapsedMillis;
+
+        Result(int mateIn, java.util.List<int[][]> line, boolean complete, long nodes, long elapsedMillis) {
+            this.mateIn = mateIn;
+            this.line = line;
+            this.complete = complete;
+            this.nodes = nodes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        boolean isMate() {
+            return mateIn > 0;
+        }
+    }
+
+    // Transposition table, in buckets of BUCKET entries; an entry is free while its work is 0.
+    // depths[] holds the plies to mate of a proven entry, the plies left of a disproven one.
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] works;
+    private final short[] depths;
+    private final int mask;
+
+    // Set by probe()
+    private int probePhi, probeDelta, probeDepth;
+
+    private String attacker;
+    // Plies from the root after which the defender is deemed to have escaped
+    private int limit;
+    private long nodes;
+    private long deadlineNanos;
+    private boolean aborted;
+    private volatile boolean stopRequested;
+
+    public MateSolver() {
+        this(DEFAULT_HASH_MB);
+    }
+
+    /**
+     * @param hashMb Size of the transposition table; the search never allocates beyond it.
+     */
+    public MateSolver(int hashMb) {
+        int entries = Integer.highestOneBit((int) Math.max(BUCKET, Math.min(1L << 30, (long) hashMb << 20) / ENTRY_BYTES));
+        keys = new long[entries];
+        phis = new int[entries];
+        deltas = new int[entries];
+        works = new int[entries];
+        depths = new short[entries];
+        mask = entries - BUCKET;
+    }
+
+    /**
+     * Looks for a forced mate for the side to move in at most {@code maxMoves} moves.
+     * @param millis Time limit; the best mate proven by then is returned, not necessarily the shortest.
+     */
+    Result solve(ChessMain.ChessGame g, int maxMoves, long millis) {
+        long start = System.nanoTime();
+        nodes = 0;
+        deadlineNanos = millis == Long.MAX_VALUE ? Long.MAX_VALUE : start + millis * 1_000_000L;
+        aborted = false;
+        attacker = g.toMove;
+        Arrays.fill(works, 0);
+
+        int found = prove(g, Math.min(2 * maxMoves - 1, Search.MAX_PLY - 1));
+        boolean complete = !aborted;
+        java.util.List<int[][]> line = found > 0 ? line(g) : new ArrayList<>();
+        while (found > 1 && !aborted) {
+            int shorter = prove(g, found - 2);
+            if (shorter == 0) {
+                complete = !aborted;
+                break;
+            }
+            found = shorter;
+            line = line(g);
+        }
+        if (found == 1) complete = true;
+        return new Result((found + 1) / 2, line, complete, nodes, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Asks a running solve to return as soon as possible. May be called from any thread;
+     * a stopped instance stays stopped.
+     */
+    void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * @return The plies to mate proven within {@code maxPlies}, or 0 if none was.
+     */
+    private int prove(ChessMain.ChessGame g, int maxPlies) {
+        limit = maxPlies;
+        mid(g, g.key(), INFINITY - 1, INFINITY - 1, 0);
+        probe(g.key(), true, maxPlies);
+        return !aborted && probePhi == 0 ? probeDepth : 0;
+    }
+
+    /**
+     * Expands {@code g} until its proof number reaches {@code thPhi} or its disproof
+     * number {@code thDelta}, both from the side to move's point of view (phi is the
+     * proof number at attacker nodes and the disproof number at defender nodes).
+     */
+    private void mid(ChessMain.ChessGame g, long key, int thPhi, int thDelta, int ply) {
+        long nodesBefore = nodes;
+        if (++nodes % 1024 == 0 && (stopRequested || System.nanoTime() > deadlineNanos)) {
+            aborted = true;
+        }
+        if (aborted) return;
+
+        boolean attacking = g.toMove.equals(attacker);
+        int remaining = limit - ply;
+        java.util.List<int[][]> moves = g.getAllLegalMoves(g.toMove);
+        if (moves.isEmpty()) {
+            if (!g.isInCheck(g.toMove)) {
+                storeEscape(key, attacking, ALWAYS);
+            } else if (attacking) {
+                store(key, INFINITY, 0, ALWAYS, 1);
+            } else {
+                store(key, INFINITY, 0, 0, 1);
+            }
+            return;
+        }
+        if (remaining <= 0) {
+            storeEscape(key, attacking, 0);
+            return;
+        }
+
+        int n = moves.size();
+        ChessMain.ChessGame[] children = new ChessMain.ChessGame[n];
+        long[] childKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int[][] mv = moves.get(i);
+            ChessMain.ChessGame child = g.deepCopy();
+            child.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            children[i] = child;
+            childKeys[i] = child.key();
+        }
+
+        while (true) {
+            int phi = INFINITY, delta = 0, delta2 = INFINITY, best = -1, bestPhi = 0;
+            // Over the children that lose for their mover, and over all of them: the
+            // attacker's quickest mate or the defender's longest escape
+            int winDepth = attacking ? Integer.MAX_VALUE : -1;
+            int loseDepth = attacking ? Integer.MAX_VALUE : -1;
+            for (int i = 0; i < n; i++) {
+                probe(childKeys[i], !attacking, remaining - 1);
+                int childPhi = probePhi, childDelta = probeDelta, childDepth = probeDepth;
+                delta = Math.min(INFINITY, delta + childPhi);
+                if (childDelta < phi) {
+                    delta2 = phi;
+                    phi = childDelta;
+                    bestPhi = childPhi;
+                    best = i;
+                } else if (childDelta < delta2) {
+                    delta2 = childDelta;
+                }
+                if (childDelta == 0) winDepth = attacking ? Math.min(winDepth, childDepth) : Math.max(winDepth, childDepth);
+                loseDepth = attacking ? Math.min(loseDepth, childDepth) : Math.max(loseDepth, childDepth);
+            }
+            if (phi >= thPhi || delta >= thDelta || aborted) {
+                int depth = phi == 0 ? winDepth + 1 : delta == 0 ? loseDepth + 1 : remaining;
+                store(key, phi, delta, Math.min(ALWAYS, depth),
+                        (int) Math.min(Integer.MAX_VALUE - 1, nodes - nodesBefore) + 1);
+                return;
+            }
+            int childThPhi = (int) Math.min(INFINITY, (long) thDelta - delta + bestPhi);
+            int childThDelta = Math.min(thPhi, delta2 + 1);
+            mid(children[best], childKeys[best], childThPhi, childThDelta, ply + 1);
+        }
+    }
+
+    /**
+     * Records a position the defender escapes from without being mated, with
+     * {@code remaining} plies to spare.
+     */
+    private void storeEscape(long key, boolean attacking, int remaining) {
+        if (attacking) {
+            store(key, INFINITY, 0, remaining, 1);
+        } else {
+            store(key, 0, INFINITY, remaining, 1);
+        }
+    }
+
+    /**
+     * Follows the proof from the root: the attacker's quickest mate against the
+     * defender's longest resistance. Proofs evicted from the table are searched again.
+     */
+    private java.util.List<int[][]> line(ChessMain.ChessGame root) {
+        java.util.List<int[][]> line = new ArrayList<>();
+        ChessMain.ChessGame g = root.deepCopy();
+        for (int ply = 0; ply < limit; ply++) {
+            boolean attacking = g.toMove.equals(attacker);
+            probe(g.key(), attacking, limit - ply);
+            if ((attacking ? probePhi : probeDelta) != 0) {
+                mid(g, g.key(), INFINITY - 1, INFINITY - 1, ply);
+            }
+            int[][] chosen = null;
+            int chosenDepth = attacking ? Integer.MAX_VALUE : -1;
+            for (int[][] mv : g.getAllLegalMoves(g.toMove)) {
+                ChessMain.ChessGame child = g.deepCopy();
+                child.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+                probe(child.key(), !attacking, limit - ply - 1);
+                if (!attacking && probePhi != 0) {
+                    mid(child, child.key(), INFINITY - 1, INFINITY - 1, ply + 1);
+                    probe(child.key(), true, limit - ply - 1);
+                }
+                if ((attacking ? probeDelta : probePhi) != 0) continue;
+                if (attacking ? probeDepth < chosenDepth : probeDepth > chosenDepth) {
+                    chosen = mv;
+                    chosenDepth = probeDepth;
+                }
+            }
+            if (chosen == null) break;
+            line.add(chosen);
+            g.makeMove(chosen[0][0], chosen[0][1], chosen[1][0], chosen[1][1]);
+        }
+        return line;
+    }
+
+    /**
+     * Looks up a position with {@code remaining} plies left into probePhi, probeDelta
+     * and probeDepth. A proof or disproof that does not hold with that many plies left
+     * reads as unexplored, as does a missing entry.
+     */
+    private void probe(long key, boolean attacking, int remaining) {
+        int bucket = (int) (key ^ (key >>> 32)) & mask;
+        for (int i = bucket; i < bucket + BUCKET; i++) {
+            if (works[i] != 0 && keys[i] == key) {
+                boolean mated = attacking ? phis[i] == 0 : deltas[i] == 0;
+                boolean escaped = attacking ? deltas[i] == 0 : phis[i] == 0;
+                if ((mated && depths[i] > remaining) || (escaped && depths[i] < remaining)) break;
+                probePhi = phis[i];
+                probeDelta = deltas[i];
+                probeDepth = depths[i];
+                return;
+            }
+        }
+        probePhi = 1;
+        probeDelta = 1;
+        probeDepth = remaining;
+    }
+
+    /**
+     * Stores a position, replacing the entry in its bucket with the least work
+     * behind it if the position is not there yet.
+     */
+    private void store(long key, int phi, int delta, int depth, int work) {
+        int bucket = (int) (key ^ (key >>> 32)) & mask;
+        int slot = bucket;
+        for (int i = bucket; i < bucket + BUCKET; i++) {
+            if (works[i] != 0 && keys[i] == key) {
+                slot = i;
+                work = (int) Math.min(Integer.MAX_VALUE - 1, (long) works[i] + work);
+                break;
+            }
+            if (works[i] < works[slot]) slot = i;
+        }
+        keys[slot] = key;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        depths[slot] = (short) depth;
+        works[slot] = work;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java MateSolver \"fen\" | positions.epd [--moves N] [--millis MS] [--hash MB]");
+            System.exit(2);
+        }
+        int maxMoves = DEFAULT_MAX_MOVES;
+        long millis = 10_000;
+        int hashMb = DEFAULT_HASH_MB;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--moves": maxMoves = Integer.parseInt(args[i + 1]); break;
+                case "--millis": millis = Long.parseLong(args[i + 1]); break;
+                case "--hash": hashMb = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        java.util.List<String> fens = new ArrayList<>();
+        java.io.File file = new java.io.File(args[0]);
+        if (file.isFile()) {
+            for (String line : java.nio.file.Files.readAllLines(file.toPath())) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 4 && !fields[0].startsWith("#")) {
+                    fens.add(String.join(" ", Arrays.copyOf(fields, 4)));
+                }
+            }
+        } else {
+            fens.add(args[0]);
+        }
+        MateSolver solver = new MateSolver(hashMb);
+        for (String fen : fens) {
+            ChessMain.ChessGame g = ChessMain.ChessGame.fromFen(fen);
+            Result r = solver.solve(g, maxMoves, millis);
+            String verdict = r.isMate() ? "mate in " + r.mateIn + (r.complete ? "" : " (or shorter)")
+                    : r.complete ? "no mate in " + maxMoves : "unknown";
+            System.out.printf(Locale.ROOT, "%s: %s%s  (%,d nodes, %d ms)%n", fen, verdict,
+                    r.isMate() ? ": " + Analyzer.pvToSan(g, r.line) : "", r.nodes, r.elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A small efficiently updatable neural network evaluation.
+ *
+ * The input is one feature per (piece, square) as seen from each side: 768 features,
+ * with the board flipped for black and "own"/"enemy" swapped, so one set of weights
+ * serves both. Each side's features are summed into a hidden accumulator of 16-bit
+ * integers. The output clamps the side to move's accumulator, then the opponent's, to
+ * [0, QA], takes the dot product with the output weights, adds the bias and divides by
+ * the network's divisor to get centipawns.
+ *
+ * A move changes at most four (piece, square) features, so the accumulator is kept on
+ * the {@link ChessMain.ChessGame} and updated in place by {@code makeMove}. It is copied
+ * with the position, as the search copies instead of unmaking. The row updates and the
+ * output are done by a {@link Kernel}. When the class is on the class path and
+ * {@code jdk.incubator.vector} is available, that is {@code NnueVectorKernel}, built from
+ * {@code simd/}. Otherwise it is the scalar code here.
+ *
+ * File format, big-endian:
+ * <pre>
+ *   int magic "CNUE", int version, int hidden, int qa, int divisor
+ *   short featureWeights[768][hidden], short featureBias[hidden]
+ *   short outputWeights[2 * hidden], int outputBias
+ * </pre>
+ *
+ * Usage: java Nnue init net.nnue [--hidden N]   writes a network equal to the material eval
+ *        java Nnue bench [net.nnue]             compares throughput with the handcrafted eval
+ */
+public final class Nnue implements Evaluation.Evaluator {
+
+    private static final int MAGIC = 0x434E5545; // "CNUE"
+    private static final int VERSION = 1;
+    static final int INPUTS = 768;
+
+    /**
+     * The arithmetic on accumulator rows, swappable for a vectorised implementation.
+     */
+    interface Kernel {
+        /** acc[i] += weights[offset + i] for i in [0, acc.length) */
+        void add(short[] acc, short[] weights, int offset);
+
+        /** acc[i] -= weights[offset + i] for i in [0, acc.length) */
+        void subtract(short[] acc, short[] weights, int offset);
+
+        /**
+         * @return The sum over i of clamp(us[i], 0, qa) * weights[i] plus
+         *         clamp(them[i], 0, qa) * weights[us.length + i].
+         */
+        int output(short[] us, short[] them, short[] weights, int qa);
+
+        String name();
+    }
+
+    static final Kernel KERNEL = loadKernel();
+
+    final int hidden;
+    final int qa;
+    final int divisor;
+    final short[] featureWeights;
+    final short[] featureBias;
+    final short[] outputWeights;
+    final int outputBias;
+
+    Nnue(int hidden, int qa, int divisor, short[] featureWeights, short[] featureBias,
+         short[] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.qa = qa;
+        this.divisor = divisor;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * The hidden layer of both sides for one position, white's first.
+     */
+    static final class Accumulator {
+        final Nnue net;
+        final short[][] values;
+
+        private Accumulator(Nnue net, short[][] values) {
+            this.net = net;
+            this.values = values;
+        }
+
+        Accumulator copy() {
+            return new Accumulator(net, new short[][]{values[0].clone(), values[1].clone()});
+        }
+
+        void add(ChessMain.Piece p, int x, int y) {
+            int piece = Zobrist.pieceIndex(p);
+            KERNEL.add(values[0], net.featureWeights, feature(piece, x, y, false) * net.hidden);
+            KERNEL.add(values[1], net.featureWeights, feature(piece, x, y, true) * net.hidden);
+        }
+
+        void remove(ChessMain.Piece p, int x, int y) {
+            int piece = Zobrist.pieceIndex(p);
+            KERNEL.subtract(values[0], net.featureWeights, feature(piece, x, y, false) * net.hidden);
+            KERNEL.subtract(values[1], net.featureWeights, feature(piece, x, y, true) * net.hidden);
+        }
+    }
+
+    /**
+     * @param piece As numbered by {@link Zobrist#pieceIndex}: white 0-5, black 6-11.
+     * @param black Whose view: black sees its own pieces as 0-5 and the board upside down.
+     */
+    static int feature(int piece, int x, int y, boolean black) {
+        return black
+                ? ((piece + 6) % 12) * 64 + (7 - x) * 8 + y
+                : piece * 64 + x * 8 + y;
+    }
+
+    /**
+     * Builds the accumulator of {@code g} from scratch.
+     */
+    Accumulator refresh(ChessMain.ChessGame g) {
+        Accumulator acc = new Accumulator(this, new short[][]{featureBias.clone(), featureBias.clone()});
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                ChessMain.Piece p = g.board[x][y];
+                if (p != null) acc.add(p, x, y);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Evaluates {@code g}, attaching an accumulator on first use so the moves made
+     * from it on are updated incrementally.
+     */
+    @Override
+    public int evaluate(ChessMain.ChessGame g) {
+        Accumulator acc = g.nnue;
+        if (acc == null || acc.net != this) {
+            acc = refresh(g);
+            g.nnue = acc;
+        }
+        boolean white = g.toMove.equals("white");
+        short[] us = acc.values[white ? 0 : 1];
+        short[] them = acc.values[white ? 1 : 0];
+        return (KERNEL.output(us, them, outputWeights, qa) + outputBias) / divisor;
+    }
+
+    static Nnue load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a network file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported network version " + version);
+            }
+            int hidden = in.readInt();
+            int qa = in.readInt();
+            int divisor = in.readInt();
+            if (hidden <= 0 || hidden > 4096 || qa <= 0 || divisor <= 0) {
+                throw new IOException("Corrupt network header in " + file);
+            }
+            short[] featureWeights = readShorts(in, INPUTS * hidden);
+            short[] featureBias = readShorts(in, hidden);
+            short[] outputWeights = readShorts(in, 2 * hidden);
+            int outputBias = in.readInt();
+            return new Nnue(hidden, qa, divisor, featureWeights, featureBias, outputWeights, outputBias);
+        }
+    }
+
+    void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hidden);
+            out.writeInt(qa);
+            out.writeInt(divisor);
+            for (short v : featureWeights) out.writeShort(v);
+            for (short v : featureBias) out.writeShort(v);
+            for (short v : outputWeights) out.writeShort(v);
+            out.writeInt(outputBias);
+        }
+    }
+
+    private static short[] readShorts(DataInputStream in, int n) throws IOException {
+        short[] a = new short[n];
+        for (int i = 0; i < n; i++) a[i] = in.readShort();
+        return a;
+    }
+
+    /**
+     * A network that reproduces {@link Evaluation#evaluateRelative}, as a starting point
+     * for training. Hidden unit t (0-4) counts the side's own pawns to queens, unit 5 + t
+     * the opponent's; the rest are zero.
+     */
+    static Nnue material(int hidden) {
+        if (hidden < 10) throw new IllegalArgumentException("Need at least 10 hidden units");
+        final int unit = 16; // accumulator step per piece; nine queens stay below qa
+        short[] featureWeights = new short[INPUTS * hidden];
+        short[] outputWeights = new short[2 * hidden];
+        ChessMain.Piece[] samples = {
+            new ChessMain.Pawn("white"), new ChessMain.Knight("white"), new ChessMain.Bishop("white"),
+            new ChessMain.Rook("white"), new ChessMain.Queen("white")
+        };
+        for (int type = 0; type < 5; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                featureWeights[(type * 64 + sq) * hidden + type] = unit;         // own
+                featureWeights[((type + 6) * 64 + sq) * hidden + 5 + type] = unit; // enemy
+            }
+            int value = Evaluation.pieceValue(samples[type]);
+            outputWeights[type] = (short) value;
+            outputWeights[5 + type] = (short) -value;
+        }
+        return new Nnue(hidden, 255, unit, featureWeights, new short[hidden], outputWeights, 0);
+    }
+
+    private static Kernel loadKernel() {
+        if (!Boolean.getBoolean("chess.nnue.scalar")) {
+            try {
+                return (Kernel) Class.forName("NnueVectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not built, or run without --add-modules jdk.incubator.vector
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public void add(short[] acc, short[] weights, int offset) {
+            for (int i = 0; i < acc.length; i++) acc[i] += weights[offset + i];
+        }
+
+        @Override
+        public void subtract(short[] acc, short[] weights, int offset) {
+            for (int i = 0; i < acc.length; i++) acc[i] -= weights[offset + i];
+        }
+
+        @Override
+        public int output(short[] us, short[] them, short[] weights, int qa) {
+            int n = us.length;
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += Math.min(Math.max(us[i], 0), qa) * weights[i];
+                sum += Math.min(Math.max(them[i], 0), qa) * weights[n + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    }
+
+    /**
+     * Evaluations per second of the handcrafted eval, the network from scratch, and the
+     * network kept up to date along random games.
+     */
+    private static void bench(Nnue net) {
+        Random random = new Random(7);
+        List<ChessMain.ChessGame> positions = new ArrayList<>();
+        List<int[][]> moves = new ArrayList<>();
+        while (positions.size() < 2000) {
+            ChessMain.ChessGame g = new ChessMain.ChessGame();
+            for (int ply = 0; ply < 80; ply++) {
+                List<int[][]> legal = g.getAllLegalMoves(g.toMove);
+                if (legal.isEmpty()) break;
+                int[][] mv = legal.get(random.nextInt(legal.size()));
+                positions.add(g.deepCopy());
+                moves.add(mv);
+                g.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            }
+        }
+        System.out.printf("hidden %d, kernel %s, %d positions%n", net.hidden, KERNEL.name(), positions.size());
+        for (int round = 0; round < 10; round++) {
+            long sink = 0;
+            long t0 = System.nanoTime();
+            for (ChessMain.ChessGame g : positions) sink += Evaluation.HANDCRAFTED.evaluate(g);
+            long t1 = System.nanoTime();
+            for (ChessMain.ChessGame g : positions) {
+                g.nnue = null;
+                sink += net.evaluate(g);
+            }
+            long t2 = System.nanoTime();
+            // As in the search: make a move on a copy, then evaluate. The positions hold
+            // accumulators from the pass above, so the network only applies the move's delta.
+            long handcraftedMoveNanos = 0, networkMoveNanos = 0;
+            for (int i = 0; i < positions.size(); i++) {
+                int[][] mv = moves.get(i);
+                ChessMain.ChessGame plain = positions.get(i).deepCopy();
+                plain.nnue = null;
+                ChessMain.ChessGame g = positions.get(i).deepCopy();
+                long s = System.nanoTime();
+                plain.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+                sink += Evaluation.HANDCRAFTED.evaluate(plain);
+                long m = System.nanoTime();
+                g.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+                sink += net.evaluate(g);
+                networkMoveNanos += System.nanoTime() - m;
+                handcraftedMoveNanos += m - s;
+            }
+            int n = positions.size();
+            System.out.printf("eval/s: handcrafted %,.0f, network from scratch %,.0f;"
+                            + " move+eval/s: handcrafted %,.0f, network incremental %,.0f (%d)%n",
+                    n / ((t1 - t0) / 1e9), n / ((t2 - t1) / 1e9),
+                    n / (handcraftedMoveNanos / 1e9), n / (networkMoveNanos / 1e9), sink & 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("init")) {
+            int hidden = args.length >= 4 && args[2].equals("--hidden") ? Integer.parseInt(args[3]) : 256;
+            material(hidden).write(new File(args[1]));
+        } else if (args.length >= 1 && args[0].equals("bench")) {
+            bench(args.length >= 2 ? load(new File(args[1])) : material(256));
+        } else {
+            System.err.println("Usage: java Nnue init net.nnue [--hidden N]");
+            System.err.println("       java Nnue bench [net.nnue]");
+            System.exit(2);
+        }
+    }
+}
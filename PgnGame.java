@@ -0,0 +1,88 @@
+import java.util.*;
+
+/**
+ * One game as read from or written to PGN: its tag pairs, the SAN move list and the result.
+ */
+public class PgnGame {
+
+    /** The Seven Tag Roster, written first and in this order. */
+    static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final java.util.List<String> moves = new ArrayList<>();
+    private final Map<Integer, String> comments = new HashMap<>();
+    private String result = "*";
+
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return The moves in SAN, without move numbers.
+     */
+    public java.util.List<String> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Attaches a comment after the move at index {@code ply} of {@link #getMoves()}.
+     */
+    public void setComment(int ply, String comment) {
+        comments.put(ply, comment);
+    }
+
+    public String getComment(int ply) {
+        return comments.get(ply);
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+        tags.put("Result", result);
+    }
+
+    /**
+     * @return The position the movetext starts from, honouring a FEN tag.
+     */
+    ChessMain.ChessGame startingPosition() {
+        String fen = tags.get("FEN");
+        return fen != null ? ChessMain.ChessGame.fromFen(fen) : new ChessMain.ChessGame();
+    }
+
+    /**
+     * Plays the SAN moves on {@code game}, returning each move as
+     * {fromX, fromY, toX, toY, promotion}.
+     * @throws IllegalArgumentException At the first move that does not resolve.
+     */
+    java.util.List<int[]> replay(ChessMain.ChessGame game) {
+        java.util.List<int[]> resolved = new ArrayList<>(moves.size());
+        for (String san : moves) {
+            int[] mv = San.parse(game, san);
+            game.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+            resolved.add(mv);
+        }
+        return resolved;
+    }
+
+    /**
+     * @return The PGN result token for a finished position, or "*" while it is still in play.
+     */
+    static String resultOf(ChessMain.ChessGame game) {
+        String state = game.isGameOver();
+        if ("checkmate".equals(state)) {
+            return game.toMove.equals("white") ? "0-1" : "1-0";
+        }
+        return state != null ? "1/2-1/2" : "*";
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.*;
+
+/**
+ * Streaming PGN parser. Games are read one at a time from a {@link Reader}
+ * through a fixed buffer, so memory use is bounded by the largest single game
+ * regardless of the size of the database. Comments, variations, NAGs,
+ * move numbers and escape lines are skipped; only tags, mainline SAN and the
+ * result are kept. Moves are not validated here, see {@link PgnGame#replay}.
+ */
+public class PgnReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean atLineStart = true;
+    private final StringBuilder token = new StringBuilder(32);
+    private long gamesRead = 0;
+
+    public PgnReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Opens a PGN file as ISO-8859-1, which round-trips any byte and covers
+     * the character set PGN is specified in.
+     */
+    public static PgnReader open(File file) throws IOException {
+        return new PgnReader(new InputStreamReader(new FileInputStream(file), "ISO-8859-1"));
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit) {
+            limit = reader.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            pos++;
+            atLineStart = c == '\n';
+        }
+        return c;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {
+            // skip
+        }
+    }
+
+    /**
+     * @return The next game, or null at end of input.
+     * @throws IOException If the underlying reader fails.
+     */
+    public PgnGame next() throws IOException {
+        PgnGame game = null;
+        boolean inMovetext = false;
+        while (true) {
+            boolean lineStart = atLineStart;
+            int c = peek();
+            if (c < 0) {
+                return game;
+            }
+            if (c == '%' && lineStart) {
+                skipLine();
+            } else if (Character.isWhitespace(c)) {
+                read();
+            } else if (c == '[') {
+                if (inMovetext) {
+                    // A new tag section without a result token: the previous game ended
+                    return game;
+                }
+                if (game == null) game = new PgnGame();
+                readTag(game);
+            } else {
+                if (game == null) game = new PgnGame();
+                inMovetext = true;
+                if (readMovetextElement(game)) {
+                    gamesRead++;
+                    return game;
+                }
+            }
+        }
+    }
+
+    private void readTag(PgnGame game) throws IOException {
+        read(); // '['
+        token.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && Character.isWhitespace(c)) read();
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && c != '"' && c != ']') {
+            token.append((char) read());
+        }
+        String name = token.toString();
+        while ((c = peek()) >= 0 && c != '"' && c != ']') read();
+        token.setLength(0);
+        if (c == '"') {
+            read();
+            while ((c = read()) >= 0 && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                    if (c < 0) break;
+                }
+                token.append((char) c);
+            }
+        }
+        while ((c = read()) >= 0 && c != ']' && c != '\n') {
+            // skip to the end of the tag
+        }
+        game.setTag(name, token.toString());
+    }
+
+    /**
+     * Consumes one movetext element.
+     * @return True if it was the game termination marker.
+     */
+    private boolean readMovetextElement(PgnGame game) throws IOException {
+        int c = read();
+        switch (c) {
+            case '{':
+                while ((c = read()) >= 0 && c != '}') {
+                    // comment
+                }
+                return false;
+            case ';':
+                skipLine();
+                return false;
+            case '(': {
+                int depth = 1;
+                while (depth > 0 && (c = read()) >= 0) {
+                    if (c == '(') depth++;
+                    else if (c == ')') depth--;
+                    else if (c == '{') {
+                        while ((c = read()) >= 0 && c != '}') {
+                            // comment inside a variation
+                        }
+                    }
+                }
+                return false;
+            }
+            case '$':
+                while ((c = peek()) >= 0 && Character.isDigit(c)) read();
+                return false;
+            default:
+                break;
+        }
+        token.setLength(0);
+        token.append((char) c);
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c) && "{}();[".indexOf(c) < 0) {
+            token.append((char) read());
+        }
+        String t = stripMoveNumber(token);
+        if (t.isEmpty()) {
+            return false;
+        }
+        if (t.equals("1-0") || t.equals("0-1") || t.equals("1/2-1/2") || t.equals("*")) {
+            game.setResult(t);
+            return true;
+        }
+        game.getMoves().add(t);
+        return false;
+    }
+
+    /**
+     * Drops a leading "12." / "12..." from a token, which may be glued to the move.
+     */
+    private static String stripMoveNumber(StringBuilder t) {
+        int i = 0;
+        while (i < t.length() && Character.isDigit(t.charAt(i))) i++;
+        if (i > 0 && i < t.length() && t.charAt(i) == '.') {
+            while (i < t.length() && t.charAt(i) == '.') i++;
+            return t.substring(i);
+        }
+        if (i == t.length()) {
+            return ""; // a bare number
+        }
+        return t.toString();
+    }
+
+    /**
+     * @return Number of complete games returned so far.
+     */
+    public long getGamesRead() {
+        return gamesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Writes games in PGN export format: the Seven Tag Roster first, then any
+ * other tags, then movetext wrapped at 80 columns and terminated by the result.
+ */
+public class PgnWriter implements Closeable, Flushable {
+
+    private static final int LINE_WIDTH = 80;
+
+    private final Writer out;
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(PgnGame game) throws IOException {
+        for (String name : PgnGame.SEVEN_TAG_ROSTER) {
+            String value = game.getTag(name);
+            writeTag(name, value != null ? value : name.equals("Result") ? game.getResult() : "?");
+        }
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            boolean roster = false;
+            for (String name : PgnGame.SEVEN_TAG_ROSTER) {
+                roster |= name.equals(tag.getKey());
+            }
+            if (!roster) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        out.write('\n');
+
+        StringBuilder line = new StringBuilder(LINE_WIDTH + 16);
+        boolean blackFirst = game.getTag("FEN") != null && game.getTag("FEN").contains(" b ");
+        int moveNumber = firstMoveNumber(game);
+        int ply = blackFirst ? 1 : 0;
+        for (int i = 0; i < game.getMoves().size(); i++) {
+            String san = game.getMoves().get(i);
+            // Keep move numbers on the same line as their move
+            if (ply % 2 == 0) {
+                append(line, moveNumber + ". " + san);
+            } else if (ply == 1 && blackFirst) {
+                append(line, moveNumber + "... " + san);
+            } else {
+                append(line, san);
+            }
+            String comment = game.getComment(i);
+            if (comment != null) {
+                for (String word : ("{" + comment.replace("}", ")") + "}").split(" ")) {
+                    append(line, word);
+                }
+            }
+            if (ply % 2 == 1) moveNumber++;
+            ply++;
+        }
+        append(line, game.getResult());
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    private static int firstMoveNumber(PgnGame game) {
+        String fen = game.getTag("FEN");
+        if (fen != null) {
+            String[] parts = fen.trim().split("\\s+");
+            if (parts.length > 5) {
+                try {
+                    return Integer.parseInt(parts[5]);
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return 1;
+    }
+
+    private void append(StringBuilder line, String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_WIDTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) line.append(' ');
+        line.append(token);
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write('[');
+        out.write(name);
+        out.write(" \"");
+        out.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        out.write("\"]\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
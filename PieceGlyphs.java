@@ -0,0 +1,138 @@
+import java.awt.*;
+import java.awt.geom.*;
+
+/**
+ * Vector piece silhouettes, drawn while the piece images are still loading or
+ * if they are missing. Shapes are defined once on a unit square and scaled to
+ * any tile size, so they need no image decoding and stay sharp at any resolution.
+ *
+ * Indices follow {@link ChessMain.Piece#spriteIndex()}.
+ */
+final class PieceGlyphs {
+
+    private static final Shape[] SHAPES = {pawn(), knight(), bishop(), rook(), queen(), king()};
+    private static final Color LIGHT_FILL = new Color(250, 250, 245);
+    private static final Color DARK_FILL = new Color(40, 40, 40);
+
+    private PieceGlyphs() {}
+
+    /**
+     * Draws piece {@code index} centred in a {@code size}-pixel tile at (x, y).
+     */
+    static void draw(Graphics2D g2d, int index, int x, int y, int size) {
+        boolean white = index < 6;
+        Shape shape = AffineTransform.getScaleInstance(size, size).createTransformedShape(SHAPES[index % 6]);
+        Graphics2D g = (Graphics2D) g2d.create();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(x, y);
+        g.setColor(ChessMain.PIECE_SHADOW);
+        g.fillOval(size * 12 / 90, size * 12 / 90, size * 70 / 90, size * 70 / 90);
+        g.setColor(white ? LIGHT_FILL : DARK_FILL);
+        g.fill(shape);
+        g.setColor(white ? DARK_FILL : LIGHT_FILL);
+        g.setStroke(new BasicStroke(Math.max(1f, size / 40f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.draw(shape);
+        g.dispose();
+    }
+
+    // All shapes sit on a common base at y = 0.82 within the unit tile
+
+    private static Area base() {
+        return new Area(new RoundRectangle2D.Double(0.25, 0.74, 0.50, 0.08, 0.04, 0.04));
+    }
+
+    private static Shape pawn() {
+        Area a = base();
+        a.add(new Area(new Ellipse2D.Double(0.40, 0.22, 0.20, 0.20)));
+        Path2D body = new Path2D.Double();
+        body.moveTo(0.44, 0.40);
+        body.lineTo(0.56, 0.40);
+        body.lineTo(0.64, 0.74);
+        body.lineTo(0.36, 0.74);
+        body.closePath();
+        a.add(new Area(body));
+        return a;
+    }
+
+    private static Shape rook() {
+        Area a = base();
+        a.add(new Area(new Rectangle2D.Double(0.33, 0.34, 0.34, 0.40)));
+        a.add(new Area(new Rectangle2D.Double(0.29, 0.22, 0.42, 0.14)));
+        // Battlements
+        a.subtract(new Area(new Rectangle2D.Double(0.37, 0.22, 0.07, 0.07)));
+        a.subtract(new Area(new Rectangle2D.Double(0.56, 0.22, 0.07, 0.07)));
+        return a;
+    }
+
+    private static Shape knight() {
+        Area a = base();
+        Path2D head = new Path2D.Double();
+        head.moveTo(0.32, 0.74);
+        head.curveTo(0.32, 0.58, 0.44, 0.52, 0.46, 0.46);
+        head.lineTo(0.30, 0.50);
+        head.lineTo(0.26, 0.42);
+        head.curveTo(0.34, 0.30, 0.42, 0.22, 0.50, 0.18);
+        head.lineTo(0.52, 0.12);
+        head.lineTo(0.58, 0.19);
+        head.curveTo(0.70, 0.26, 0.72, 0.50, 0.68, 0.74);
+        head.closePath();
+        a.add(new Area(head));
+        a.subtract(new Area(new Ellipse2D.Double(0.44, 0.28, 0.05, 0.05)));
+        return a;
+    }
+
+    private static Shape bishop() {
+        Area a = base();
+        a.add(new Area(new Ellipse2D.Double(0.47, 0.12, 0.06, 0.06)));
+        a.add(new Area(new Ellipse2D.Double(0.37, 0.18, 0.26, 0.36)));
+        Path2D body = new Path2D.Double();
+        body.moveTo(0.42, 0.50);
+        body.lineTo(0.58, 0.50);
+        body.lineTo(0.64, 0.74);
+        body.lineTo(0.36, 0.74);
+        body.closePath();
+        a.add(new Area(body));
+        // Mitre slit
+        Path2D slit = new Path2D.Double();
+        slit.moveTo(0.52, 0.26);
+        slit.lineTo(0.58, 0.24);
+        slit.lineTo(0.51, 0.36);
+        slit.closePath();
+        a.subtract(new Area(slit));
+        return a;
+    }
+
+    private static Shape queen() {
+        Area a = base();
+        Path2D crown = new Path2D.Double();
+        crown.moveTo(0.30, 0.74);
+        crown.lineTo(0.24, 0.30);
+        crown.lineTo(0.37, 0.52);
+        crown.lineTo(0.41, 0.24);
+        crown.lineTo(0.50, 0.50);
+        crown.lineTo(0.59, 0.24);
+        crown.lineTo(0.63, 0.52);
+        crown.lineTo(0.76, 0.30);
+        crown.lineTo(0.70, 0.74);
+        crown.closePath();
+        a.add(new Area(crown));
+        double[][] tips = {{0.24, 0.30}, {0.41, 0.24}, {0.59, 0.24}, {0.76, 0.30}};
+        for (double[] t : tips) {
+            a.add(new Area(new Ellipse2D.Double(t[0] - 0.035, t[1] - 0.035, 0.07, 0.07)));
+        }
+        return a;
+    }
+
+    private static Shape king() {
+        Area a = base();
+        a.add(new Area(new Rectangle2D.Double(0.475, 0.10, 0.05, 0.18)));
+        a.add(new Area(new Rectangle2D.Double(0.42, 0.15, 0.16, 0.05)));
+        Path2D body = new Path2D.Double();
+        body.moveTo(0.32, 0.74);
+        body.curveTo(0.22, 0.50, 0.30, 0.30, 0.50, 0.38);
+        body.curveTo(0.70, 0.30, 0.78, 0.50, 0.68, 0.74);
+        body.closePath();
+        a.add(new Area(body));
+        return a;
+    }
+}
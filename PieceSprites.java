@@ -0,0 +1,218 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+/**
+ * Piece images rendered for the board's current tile size and display scale.
+ *
+ * Full-resolution source images are kept once; sprite sets are rendered from them
+ * per (tile size, scale factor) on a background thread and cached, so resizing the
+ * window never scales images on the event dispatch thread. Until the wanted set is
+ * ready, {@link #get} hands back the closest cached set to stretch as a placeholder.
+ *
+ * Source images are decoded in parallel off the event dispatch thread, from the
+ * classpath (so they work from a jar) or else from the images directory. Before
+ * they arrive {@link #get} returns null and the board draws {@link PieceGlyphs}.
+ *
+ * Indices follow {@link ChessMain.Piece#spriteIndex()}.
+ */
+public class PieceSprites {
+
+    static final String[] COLORS = {"white", "black"};
+    static final String[] NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+
+    // Layout within a tile, as fractions of a 90px reference tile
+    private static final double PIECE_INSET = 5 / 90.0;
+    private static final double SHADOW_OFFSET = 12 / 90.0;
+    private static final double SHADOW_SIZE = 70 / 90.0;
+
+    // Recently used sizes kept around, enough to flip between windowed and maximised
+    private static final int CACHE_SIZE = 6;
+
+    /**
+     * Sprites for one tile size, rendered at device resolution.
+     */
+    static final class SpriteSet {
+        final int tile;
+        final double scale;
+        /** Bare pieces, for the animated piece. */
+        final BufferedImage[] pieces = new BufferedImage[12];
+        /** Pieces with their drop shadow, one tile in size. */
+        final BufferedImage[] sprites = new BufferedImage[12];
+
+        SpriteSet(int tile, double scale) {
+            this.tile = tile;
+            this.scale = scale;
+        }
+
+        boolean matches(int tile, double scale) {
+            return this.tile == tile && this.scale == scale;
+        }
+    }
+
+    private final BufferedImage[] sources = new BufferedImage[12];
+    private boolean sourcesLoaded;
+    private final Map<String, SpriteSet> cache = new LinkedHashMap<String, SpriteSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SpriteSet> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chess-sprites");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Runnable onReady;
+    private SpriteSet current;
+    private volatile String wanted;
+
+    /**
+     * @param onReady Run on the event dispatch thread whenever a newly rendered set is installed.
+     */
+    PieceSprites(Runnable onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * Starts decoding the twelve piece images in parallel and returns at once.
+     * When all have arrived (or failed) the sprite cache is reset and {@code onReady} runs.
+     */
+    void loadSourcesAsync() {
+        // Decode straight from the stream rather than through a temporary file
+        ImageIO.setUseCache(false);
+        CompletableFuture<?>[] loads = new CompletableFuture<?>[12];
+        for (int c = 0; c < COLORS.length; c++) {
+            for (int n = 0; n < NAMES.length; n++) {
+                int index = c * 6 + n;
+                String key = COLORS[c] + "_" + NAMES[n];
+                loads[index] = CompletableFuture.runAsync(() -> sources[index] = loadSource(key));
+            }
+        }
+        CompletableFuture.allOf(loads).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            sourcesLoaded = true;
+            cache.clear();
+            current = null;
+            wanted = null;
+            StartupProfile.mark("assetsLoaded");
+            onReady.run();
+        }));
+    }
+
+    private static BufferedImage loadSource(String key) {
+        String name = "images/" + key + ".png";
+        try {
+            URL url = PieceSprites.class.getResource("/" + name);
+            BufferedImage img = url != null ? ImageIO.read(url) : ImageIO.read(new File(name));
+            if (img == null) {
+                System.err.println("Unreadable image: " + name);
+            }
+            return img;
+        } catch (IOException ex) {
+            System.err.println("Failed to load image: " + key);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the sprites for a tile size, scheduling a render if they are not cached.
+     * Must be called on the event dispatch thread.
+     * @return The exact set if ready, otherwise the most recent set (check
+     *         {@link SpriteSet#matches}), or null before anything was rendered.
+     */
+    SpriteSet get(int tile, double scale) {
+        if (!sourcesLoaded) {
+            return null;
+        }
+        if (current != null && current.matches(tile, scale)) {
+            return current;
+        }
+        String key = tile + "@" + scale;
+        SpriteSet cached = cache.get(key);
+        if (cached != null) {
+            current = cached;
+            return cached;
+        }
+        if (!key.equals(wanted)) {
+            wanted = key;
+            renderer.execute(() -> {
+                // During a drag-resize only the latest size is worth rendering
+                if (!key.equals(wanted)) return;
+                SpriteSet set = render(tile, scale);
+                SwingUtilities.invokeLater(() -> {
+                    cache.put(key, set);
+                    if (key.equals(wanted)) {
+                        current = set;
+                        onReady.run();
+                    }
+                });
+            });
+        }
+        return current;
+    }
+
+    private SpriteSet render(int tile, double scale) {
+        SpriteSet set = new SpriteSet(tile, scale);
+        int device = (int) Math.round(tile * scale);
+        int inset = (int) Math.round(device * PIECE_INSET);
+        int pieceSize = device - 2 * inset;
+        for (int i = 0; i < 12; i++) {
+            BufferedImage sprite = new BufferedImage(device, device, BufferedImage.TYPE_INT_ARGB);
+            if (sources[i] == null) {
+                // Missing image: bake the vector glyph instead
+                Graphics2D g2 = sprite.createGraphics();
+                PieceGlyphs.draw(g2, i, 0, 0, device);
+                g2.dispose();
+                set.pieces[i] = sprite;
+                set.sprites[i] = sprite;
+                continue;
+            }
+            BufferedImage piece = scaleDown(sources[i], pieceSize);
+            Graphics2D g2 = sprite.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(ChessMain.PIECE_SHADOW);
+            int offset = (int) Math.round(device * SHADOW_OFFSET);
+            int shadow = (int) Math.round(device * SHADOW_SIZE);
+            g2.fillOval(offset, offset, shadow, shadow);
+            g2.drawImage(piece, inset, inset, null);
+            g2.dispose();
+            set.pieces[i] = piece;
+            set.sprites[i] = sprite;
+        }
+        return set;
+    }
+
+    /**
+     * Scales an image to a square of {@code size} pixels by repeated halving with bilinear
+     * filtering. This is sharp and far faster than {@link Image#SCALE_SMOOTH}.
+     */
+    static BufferedImage scaleDown(BufferedImage src, int size) {
+        BufferedImage img = src;
+        int w = src.getWidth(), h = src.getHeight();
+        do {
+            w = Math.max(size, w / 2);
+            h = Math.max(size, h / 2);
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = step.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2.drawImage(img, 0, 0, w, h, null);
+            g2.dispose();
+            img = step;
+        } while (w != size || h != size);
+        return img;
+    }
+
+    void shutdown() {
+        renderer.shutdownNow();
+    }
+}
@@ -0,0 +1,420 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * On-disk index of every position reached in a set of games.
+ *
+ * Two files make up a database:
+ * <pre>
+ *   name.idx   32-byte header, then one 32-byte entry per distinct position sorted by
+ *              Zobrist key: long key, long firstRef, int refCount, int whiteWins,
+ *              int draws, int blackWins
+ *   name.refs  int game numbers (order of import, from 0), grouped per position
+ * </pre>
+ * Both are memory-mapped read-only in 1 GB segments, so a lookup is a binary search
+ * that touches about log2(n) pages and never pulls the database onto the heap.
+ * A game that passes through the same position twice is counted once.
+ *
+ * Building sorts bounded runs in memory, spills them to temporary files and merges
+ * them, so the archive may be far larger than the heap.
+ *
+ * Usage: java PositionDatabase build games.pgn name [--plies N]
+ *        java PositionDatabase query name "FEN"
+ */
+public class PositionDatabase implements Closeable {
+
+    private static final int MAGIC = 0x43485044; // "CHPD"
+    private static final int VERSION = 1;
+    static final int ENTRY_SIZE = 32;
+    private static final int SEGMENT_SHIFT = 30;
+
+    static final String INDEX_SUFFIX = ".idx";
+    static final String REFS_SUFFIX = ".refs";
+
+    // Result codes as stored during the build
+    private static final int WHITE_WINS = 0;
+    private static final int DRAW = 1;
+    private static final int BLACK_WINS = 2;
+    private static final int UNFINISHED = 3;
+
+    private final MappedByteBuffer[] index;
+    private final MappedByteBuffer[] refs;
+    private final long entryCount;
+    private final long gameCount;
+
+    /**
+     * Statistics for one position.
+     */
+    static class Entry {
+        final long key;
+        final long firstRef;
+        final int games;
+        final int whiteWins;
+        final int draws;
+        final int blackWins;
+
+        Entry(long key, long firstRef, int games, int whiteWins, int draws, int blackWins) {
+            this.key = key;
+            this.firstRef = firstRef;
+            this.games = games;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+        }
+
+        @Override
+        public String toString() {
+            return games + " games, +" + whiteWins + " =" + draws + " -" + blackWins;
+        }
+    }
+
+    private PositionDatabase(File base) throws IOException {
+        File idx = new File(base.getPath() + INDEX_SUFFIX);
+        File ref = new File(base.getPath() + REFS_SUFFIX);
+        index = map(idx);
+        refs = map(ref);
+        if (index.length == 0 || index[0].getInt(0) != MAGIC || index[0].getInt(4) != VERSION) {
+            throw new IOException("Not a position database: " + idx);
+        }
+        entryCount = index[0].getLong(8);
+        gameCount = index[0].getLong(16);
+    }
+
+    /**
+     * Opens a database built by {@link #build}.
+     * @param base Path without the .idx/.refs suffix.
+     * @throws IOException If the files are missing or not a database.
+     */
+    static PositionDatabase open(File base) throws IOException {
+        return new PositionDatabase(base);
+    }
+
+    private static MappedByteBuffer[] map(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            int segments = (int) ((size + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] maps = new MappedByteBuffer[segments];
+            for (int i = 0; i < segments; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                maps[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_SHIFT, size - start));
+            }
+            // The mapping stays valid after the channel is closed
+            return maps;
+        }
+    }
+
+    // Entries and refs are aligned to their size and segments are a power of two, so nothing straddles a segment
+    private static long getLong(MappedByteBuffer[] maps, long pos) {
+        return maps[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & ((1L << SEGMENT_SHIFT) - 1)));
+    }
+
+    private static int getInt(MappedByteBuffer[] maps, long pos) {
+        return maps[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & ((1L << SEGMENT_SHIFT) - 1)));
+    }
+
+    private long entryOffset(long i) {
+        return ENTRY_SIZE + i * ENTRY_SIZE; // the header takes one entry's worth of space
+    }
+
+    /**
+     * @return The statistics for a position, or null if no game reached it.
+     */
+    Entry lookup(ChessMain.ChessGame g) {
+        return lookup(Zobrist.hash(g));
+    }
+
+    /**
+     * Binary search over the mapped index.
+     */
+    Entry lookup(long key) {
+        long lo = 0, hi = entryCount - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long off = entryOffset(mid);
+            long k = getLong(index, off);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return new Entry(k, getLong(index, off + 8), getInt(index, off + 16),
+                        getInt(index, off + 20), getInt(index, off + 24), getInt(index, off + 28));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Up to {@code max} game numbers that reached the entry's position, in import order.
+     */
+    int[] games(Entry e, int max) {
+        int n = Math.min(max, e.games);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = getInt(refs, (e.firstRef + i) * 4);
+        }
+        return result;
+    }
+
+    long getPositionCount() {
+        return entryCount;
+    }
+
+    long getGameCount() {
+        return gameCount;
+    }
+
+    @Override
+    public void close() {
+        // Mapped buffers are released when collected
+    }
+
+    /**
+     * Indexes every position of every game in a PGN file.
+     * @param maxPlies Positions past this ply are not indexed; 0 for no limit.
+     * @param runSize Positions sorted in memory per temporary run.
+     * @return The number of games indexed.
+     */
+    static long build(File pgn, File base, int maxPlies, int runSize) throws IOException {
+        File tmpDir = Files.createTempDirectory(base.getAbsoluteFile().getParentFile().toPath(), "posdb").toFile();
+        java.util.List<File> runs = new ArrayList<>();
+        long games = 0;
+        long[] keys = new long[runSize];
+        long[] values = new long[runSize];
+        int n = 0;
+        try {
+            try (PgnReader reader = PgnReader.open(pgn)) {
+                PgnGame game;
+                while ((game = reader.next()) != null) {
+                    long gameNo = games++;
+                    int result = resultCode(game.getResult());
+                    long value = (gameNo << 2) | result;
+                    // A run must hold a whole game so repeats within it sort next to each other
+                    int plies = maxPlies > 0 ? Math.min(maxPlies, game.getMoves().size()) : game.getMoves().size();
+                    if (n + plies + 1 > runSize && n > 0) {
+                        runs.add(writeRun(tmpDir, runs.size(), keys, values, n));
+                        n = 0;
+                    }
+                    try {
+                        ChessMain.ChessGame g = game.startingPosition();
+                        keys[n] = Zobrist.hash(g);
+                        values[n++] = value;
+                        java.util.List<String> moves = game.getMoves();
+                        for (int ply = 0; ply < plies && n < runSize; ply++) {
+                            int[] mv = San.parse(g, moves.get(ply));
+                            g.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+                            keys[n] = Zobrist.hash(g);
+                            values[n++] = value;
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // Keep the positions up to the bad move
+                        System.err.println("Game " + (gameNo + 1) + ": " + e.getMessage());
+                    }
+                    if (games % 10000 == 0) {
+                        System.err.println(games + " games read");
+                    }
+                }
+            }
+            if (n > 0) {
+                runs.add(writeRun(tmpDir, runs.size(), keys, values, n));
+            }
+            keys = null;
+            values = null;
+            merge(runs, base, games);
+        } finally {
+            for (File f : runs) f.delete();
+            tmpDir.delete();
+        }
+        return games;
+    }
+
+    private static int resultCode(String result) {
+        switch (result) {
+            case "1-0": return WHITE_WINS;
+            case "0-1": return BLACK_WINS;
+            case "1/2-1/2": return DRAW;
+            default: return UNFINISHED;
+        }
+    }
+
+    private static File writeRun(File dir, int number, long[] keys, long[] values, int n) throws IOException {
+        sort(keys, values, 0, n - 1);
+        File f = new File(dir, "run-" + number);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))) {
+            for (int i = 0; i < n; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Sorts parallel arrays by key, then value. Quicksort with an insertion sort for short ranges.
+     */
+    private static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pk = keys[mid], pv = values[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pk, pv) < 0) i++;
+                while (compare(keys[j], values[j], pk, pv) > 0) j--;
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // Recurse into the smaller half to bound the stack
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(keys[j], values[j], keys[j - 1], values[j - 1]) < 0; j--) {
+                swap(keys, values, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(long k1, long v1, long k2, long v2) {
+        int c = Long.compare(k1, k2);
+        return c != 0 ? c : Long.compare(v1, v2);
+    }
+
+    private static void swap(long[] keys, long[] values, int a, int b) {
+        long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+        long v = values[a]; values[a] = values[b]; values[b] = v;
+    }
+
+    /**
+     * One sorted run being merged.
+     */
+    private static class RunReader implements Closeable {
+        final DataInputStream in;
+        long remaining;
+        long key;
+        long value;
+
+        RunReader(File f) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+            remaining = f.length() / 16;
+        }
+
+        boolean advance() throws IOException {
+            if (remaining-- <= 0) return false;
+            key = in.readLong();
+            value = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void merge(java.util.List<File> runs, File base, long games) throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> compare(a.key, a.value, b.key, b.value));
+        File idxFile = new File(base.getPath() + INDEX_SUFFIX);
+        File refsFile = new File(base.getPath() + REFS_SUFFIX);
+        long entries = 0;
+        try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idxFile), 1 << 16));
+             DataOutputStream refsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(refsFile), 1 << 16))) {
+            for (File f : runs) {
+                RunReader r = new RunReader(f);
+                if (r.advance()) heap.add(r); else r.close();
+            }
+            // Header, patched with the counts once they are known
+            idx.write(new byte[ENTRY_SIZE]);
+
+            long refCount = 0;
+            long currentKey = 0;
+            long lastValue = -1;
+            long firstRef = 0;
+            int[] counts = new int[4];
+            boolean open = false;
+            while (!heap.isEmpty()) {
+                RunReader r = heap.poll();
+                long key = r.key, value = r.value;
+                if (r.advance()) heap.add(r); else r.close();
+
+                if (!open || key != currentKey) {
+                    if (open) {
+                        writeEntry(idx, currentKey, firstRef, refCount - firstRef, counts);
+                        entries++;
+                    }
+                    open = true;
+                    currentKey = key;
+                    firstRef = refCount;
+                    lastValue = -1;
+                    Arrays.fill(counts, 0);
+                }
+                if (value == lastValue) continue; // same game again, e.g. a repetition
+                lastValue = value;
+                refsOut.writeInt((int) (value >>> 2));
+                refCount++;
+                counts[(int) (value & 3)]++;
+            }
+            if (open) {
+                writeEntry(idx, currentKey, firstRef, refCount - firstRef, counts);
+                entries++;
+            }
+        } finally {
+            for (RunReader r : heap) r.close();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(idxFile, "rw")) {
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(entries);
+            raf.writeLong(games);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream idx, long key, long firstRef, long refs, int[] counts) throws IOException {
+        idx.writeLong(key);
+        idx.writeLong(firstRef);
+        idx.writeInt((int) refs);
+        idx.writeInt(counts[WHITE_WINS]);
+        idx.writeInt(counts[DRAW]);
+        idx.writeInt(counts[BLACK_WINS]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("build")) {
+            int plies = 0;
+            if (args.length >= 5 && args[3].equals("--plies")) {
+                plies = Integer.parseInt(args[4]);
+            }
+            long start = System.nanoTime();
+            long games = build(new File(args[1]), new File(args[2]), plies, 4 << 20);
+            try (PositionDatabase db = open(new File(args[2]))) {
+                System.err.printf("Indexed %d games, %d positions in %.1fs%n", games, db.getPositionCount(),
+                        (System.nanoTime() - start) / 1e9);
+            }
+        } else if (args.length >= 3 && args[0].equals("query")) {
+            try (PositionDatabase db = open(new File(args[1]))) {
+                ChessMain.ChessGame g = ChessMain.ChessGame.fromFen(args[2]);
+                Entry e = db.lookup(g);
+                if (e == null) {
+                    System.out.println("Position not found");
+                } else {
+                    System.out.println(e);
+                    System.out.println("Games: " + Arrays.toString(db.games(e, 20)));
+                }
+            }
+        } else {
+            System.err.println("Usage: java PositionDatabase build games.pgn name [--plies N]");
+            System.err.println("       java PositionDatabase query name \"FEN\"");
+            System.exit(2);
+        }
+    }
+}
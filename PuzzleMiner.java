@@ -0,0 +1,301 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mines tactics puzzles from a PGN archive.
+ *
+ * Nearly every position in a game is quiet, and a search costs thousands of times more
+ * than looking at the board, so each position first passes a static prefilter on the
+ * reading thread. A position stays a candidate only if the side to move has a capture
+ * that wins at least {@link #MIN_GAIN} by static exchange, not counting recapturing what
+ * was just taken, or a check against a king with at most one flight square. Candidates
+ * not seen before (by Zobrist key) go to a pool of searches.
+ *
+ * The search keeps the two best moves. A puzzle needs the best move to win material or
+ * mate, and the second best to fall at least {@link #UNIQUE_GAP} short and not win as
+ * well. The line then follows the expected reply and, while the best move stays that
+ * far ahead of the next, goes on for up to {@link #MAX_SOLUTION_MOVES} moves. Mates
+ * come from {@link MateSolver}, so their line is the shortest.
+ *
+ * Puzzles are appended to a CSV file, one per line: FEN, the solution in UCI with the
+ * defender's replies, a theme ("material" or "mateIn2" and so on), game number and ply.
+ * The keys of the puzzles already in the file are loaded first, so a rerun over the same
+ * or another archive adds only new positions.
+ *
+ * Usage: java PuzzleMiner games.pgn puzzles.csv [--threads N] [--depth D] [--movetime MS]
+ */
+public class PuzzleMiner {
+
+    static final int MIN_GAIN = 200;
+    static final int UNIQUE_GAP = 150;
+    static final int MAX_SOLUTION_MOVES = 4;
+    static final int MAX_MATE_MOVES = 6;
+    static final long MATE_MILLIS = 2000;
+    // Openings are well known and rarely tactical
+    static final int MIN_PLY = 8;
+    static final int REPORT_EVERY_GAMES = 1000;
+
+    private final int threads;
+    private final Search.Limits limits;
+    private final ThreadLocal<MateSolver> mateSolvers = ThreadLocal.withInitial(MateSolver::new);
+
+    // Counters for the closing report
+    private long games;
+    private long positions;
+    private long candidates;
+    private long searched;
+    private final AtomicLong puzzles = new AtomicLong();
+
+    PuzzleMiner(int threads, Search.Limits limits) {
+        this.threads = threads;
+        this.limits = limits;
+    }
+
+    /**
+     * A verified puzzle: the position, the solver's moves with the replies in between, and its theme.
+     */
+    static class Puzzle {
+        final String fen;
+        final java.util.List<int[][]> moves;
+        final String theme;
+
+        Puzzle(String fen, java.util.List<int[][]> moves, String theme) {
+            this.fen = fen;
+            this.moves = moves;
+            this.theme = theme;
+        }
+    }
+
+    /**
+     * The static prefilter: no search, only move generation, static exchanges and attack tables.
+     * @param lastTo Square ({@code x * 8 + y}) the previous move went to, or -1.
+     * @param lastCaptured The piece the previous move took, or null.
+     * @return Whether the position is worth a search.
+     */
+    static boolean isCandidate(ChessMain.ChessGame g, int lastTo, ChessMain.Piece lastCaptured) {
+        java.util.List<int[][]> moves = g.getAllLegalMoves(g.toMove);
+        String enemy = g.toMove.equals("white") ? "black" : "white";
+        for (int[][] mv : moves) {
+            ChessMain.Piece victim = g.board[mv[1][0]][mv[1][1]];
+            if (victim == null) continue;
+            int gain = g.staticExchange(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            if (gain < MIN_GAIN) continue;
+            // Taking back what was just taken is the middle of a trade, not a tactic
+            boolean recapture = lastCaptured != null && mv[1][0] * 8 + mv[1][1] == lastTo
+                    && gain <= Evaluation.pieceValue(lastCaptured);
+            if (!recapture) return true;
+        }
+
+        int king = kingSquare(g, enemy);
+        if (king < 0) return false;
+        int flights = 0;
+        for (int sq : AttackTables.KING[king]) {
+            ChessMain.Piece p = g.board[sq >> 3][sq & 7];
+            if ((p == null || !p.color.equals(enemy)) && !AttackTables.isAttacked(g.board, sq >> 3, sq & 7, g.toMove)) {
+                flights++;
+            }
+        }
+        if (flights > 1) return false;
+        for (int[][] mv : moves) {
+            if (givesDirectCheck(g, mv, king)) return true;
+        }
+        return false;
+    }
+
+    private static int kingSquare(ChessMain.ChessGame g, String color) {
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                ChessMain.Piece p = g.board[x][y];
+                if (p instanceof ChessMain.King && p.color.equals(color)) return x * 8 + y;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether the moved piece attacks {@code king} from its new square. Discovered
+     *         checks are not seen; the prefilter may miss a candidate, never admit a wrong one.
+     */
+    private static boolean givesDirectCheck(ChessMain.ChessGame g, int[][] mv, int king) {
+        ChessMain.Piece p = g.board[mv[0][0]][mv[0][1]];
+        int from = mv[0][0] * 8 + mv[0][1], to = mv[1][0] * 8 + mv[1][1];
+        int[] steps = null;
+        if (p instanceof ChessMain.Knight) steps = AttackTables.KNIGHT[to];
+        else if (p instanceof ChessMain.Pawn) steps = AttackTables.PAWN[p.color.equals("white") ? 0 : 1][to];
+        if (steps != null) {
+            for (int sq : steps) {
+                if (sq == king) return true;
+            }
+            return false;
+        }
+        int first = p instanceof ChessMain.Bishop ? 4 : 0;
+        int last = p instanceof ChessMain.Rook ? 4 : p instanceof ChessMain.King ? 0 : 8;
+        for (int d = first; d < last; d++) {
+            for (int sq : AttackTables.RAYS[to][d]) {
+                if (sq == king) return true;
+                if (sq != from && g.board[sq >> 3][sq & 7] != null) break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The full check: searches the position and follows the line while the best move stays unique.
+     * @return The puzzle, or null if the position has none.
+     */
+    Puzzle verify(ChessMain.ChessGame position) {
+        ChessMain.ChessGame g = position.deepCopy();
+        java.util.List<int[][]> line = new ArrayList<>();
+        for (int move = 0; move < MAX_SOLUTION_MOVES; move++) {
+            Search.Result r = new Search().search(g, limits, 2, null);
+            if (r.lines.isEmpty()) break;
+            Search.Line best = r.lines.get(0);
+            Search.Line second = r.lines.size() > 1 ? r.lines.get(1) : null;
+            if (move == 0 && best.score >= Search.MATE_SCORE - 2 * MAX_MATE_MOVES) {
+                return mate(position, second);
+            }
+            boolean winning = best.score >= MIN_GAIN;
+            // At the start the alternatives must not win too; later they need only be clearly worse
+            boolean unique = second == null
+                    || (best.score - second.score >= UNIQUE_GAP && (move > 0 || second.score < MIN_GAIN));
+            if (!winning || !unique) {
+                if (move == 0) return null;
+                break;
+            }
+            line.add(best.move);
+            g.makeMove(best.move[0][0], best.move[0][1], best.move[1][0], best.move[1][1]);
+            if (best.pv.size() < 2 || g.getAllLegalMoves(g.toMove).isEmpty()) break;
+            int[][] reply = best.pv.get(1);
+            line.add(reply);
+            g.makeMove(reply[0][0], reply[0][1], reply[1][0], reply[1][1]);
+        }
+        // End on the solver's move
+        if (line.size() % 2 == 0) line.remove(line.size() - 1);
+        return line.isEmpty() ? null : new Puzzle(position.toFen(), line, "material");
+    }
+
+    /**
+     * Verifies a mate the search found with the mate solver, which gives the shortest line.
+     */
+    private Puzzle mate(ChessMain.ChessGame position, Search.Line second) {
+        MateSolver.Result m = mateSolvers.get().solve(position, MAX_MATE_MOVES, MATE_MILLIS);
+        if (!m.isMate() || !m.complete) return null;
+        // Another move mating as fast makes the first move ambiguous
+        if (second != null && second.score >= Search.MATE_SCORE - (2 * m.mateIn - 1)) return null;
+        return new Puzzle(position.toFen(), m.line, "mateIn" + m.mateIn);
+    }
+
+    /**
+     * Streams {@code input} through the prefilter and the search pool, appending new puzzles to {@code output}.
+     */
+    void run(File input, File output) throws IOException, InterruptedException {
+        Set<Long> seen = new HashSet<>();
+        boolean fresh = !output.exists() || output.length() == 0;
+        if (!fresh) {
+            try (BufferedReader in = new BufferedReader(new FileReader(output))) {
+                String line = in.readLine(); // header
+                while ((line = in.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    if (comma > 0) seen.add(ChessMain.ChessGame.fromFen(line.substring(0, comma)).key());
+                }
+            }
+            System.err.println(seen.size() + " puzzles already in " + output);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore window = new Semaphore(threads * 4);
+        long started = System.nanoTime();
+        try (Writer out = new BufferedWriter(new FileWriter(output, true));
+             PgnReader reader = PgnReader.open(input)) {
+            if (fresh) out.write("fen,moves,theme,game,ply\n");
+            PgnGame pgn;
+            while ((pgn = reader.next()) != null) {
+                long gameNo = ++games;
+                ChessMain.ChessGame g = pgn.startingPosition();
+                try {
+                    int ply = 0;
+                    for (String san : pgn.getMoves()) {
+                        int[] mv = San.parse(g, san);
+                        ChessMain.Piece captured = g.board[mv[2]][mv[3]];
+                        g.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+                        if (++ply < MIN_PLY) continue;
+                        positions++;
+                        if (!isCandidate(g, mv[2] * 8 + mv[3], captured)) continue;
+                        candidates++;
+                        if (!seen.add(g.key())) continue;
+                        searched++;
+                        ChessMain.ChessGame position = g.deepCopy();
+                        int at = ply;
+                        window.acquire();
+                        pool.execute(() -> {
+                            try {
+                                Puzzle p = verify(position);
+                                if (p != null) write(out, p, gameNo, at);
+                            } finally {
+                                window.release();
+                            }
+                        });
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Game " + gameNo + ": " + e.getMessage());
+                }
+                if (gameNo % REPORT_EVERY_GAMES == 0) report(started);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        report(started);
+    }
+
+    private void write(Writer out, Puzzle p, long game, int ply) {
+        ChessMain.ChessGame g = ChessMain.ChessGame.fromFen(p.fen);
+        StringBuilder sb = new StringBuilder(p.fen).append(',');
+        for (int i = 0; i < p.moves.size(); i++) {
+            int[][] mv = p.moves.get(i);
+            if (i > 0) sb.append(' ');
+            sb.append(San.toUci(g, mv[0][0], mv[0][1], mv[1][0], mv[1][1], 'q'));
+            g.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+        }
+        sb.append(',').append(p.theme).append(',').append(game).append(',').append(ply).append('\n');
+        synchronized (out) {
+            try {
+                out.write(sb.toString());
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        puzzles.incrementAndGet();
+    }
+
+    private void report(long startNanos) {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        System.err.printf(Locale.ROOT, "%,d games, %,d positions, %,d candidates (%.2f%%), %,d searched, %,d puzzles, %.1f games/s%n",
+                games, positions, candidates, positions == 0 ? 0 : 100.0 * candidates / positions,
+                searched, puzzles.get(), games / secs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java PuzzleMiner games.pgn puzzles.csv [--threads N] [--depth D] [--movetime MS]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        Search.Limits limits = Search.Limits.depth(6).millis(2000);
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--depth": limits.depth = Integer.parseInt(args[i + 1]); break;
+                case "--movetime": limits.millis(Long.parseLong(args[i + 1])); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        new PuzzleMiner(threads, limits).run(new File(args[0]), new File(args[1]));
+    }
+}
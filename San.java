@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+
+/**
+ * Standard Algebraic Notation for moves on a {@link ChessMain.ChessGame}.
+ * Moves are passed around as {fromX, fromY, toX, toY, promotion}, where
+ * promotion is one of 'q', 'r', 'b', 'n' (ignored unless a pawn reaches the last rank).
+ */
+public final class San {
+
+    private San() {}
+
+    /**
+     * Writes a move in SAN, including capture marks, disambiguation,
+     * castling, promotion and check/mate suffixes.
+     * @param g The position before the move; left untouched.
+     */
+    static String toSan(ChessMain.ChessGame g, int fromX, int fromY, int toX, int toY, char promotion) {
+        ChessMain.Piece piece = g.board[fromX][fromY];
+        if (piece == null) {
+            throw new IllegalArgumentException("No piece on " + square(fromX, fromY));
+        }
+        StringBuilder sb = new StringBuilder(8);
+        char letter = Character.toUpperCase(piece.symbol().charAt(0));
+        if (letter == 'K' && Math.abs(toY - fromY) == 2) {
+            sb.append(toY > fromY ? "O-O" : "O-O-O");
+        } else if (letter == 'P') {
+            boolean capture = fromY != toY;
+            if (capture) {
+                sb.append((char) ('a' + fromY)).append('x');
+            }
+            sb.append(square(toX, toY));
+            if (toX == 0 || toX == 7) {
+                sb.append('=').append(Character.toUpperCase(promotion));
+            }
+        } else {
+            sb.append(letter);
+            appendDisambiguation(sb, g, piece, letter, fromX, fromY, toX, toY);
+            if (g.board[toX][toY] != null) {
+                sb.append('x');
+            }
+            sb.append(square(toX, toY));
+        }
+
+        ChessMain.ChessGame after = g.deepCopy();
+        after.makeMove(fromX, fromY, toX, toY, promotion);
+        if (after.isInCheck(after.toMove)) {
+            sb.append(after.getAllLegalMoves(after.toMove).isEmpty() ? '#' : '+');
+        }
+        return sb.toString();
+    }
+
+    private static void appendDisambiguation(StringBuilder sb, ChessMain.ChessGame g, ChessMain.Piece piece,
+                                             char letter, int fromX, int fromY, int toX, int toY) {
+        boolean ambiguous = false, sameFile = false, sameRank = false;
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                ChessMain.Piece other = g.board[i][j];
+                if (other == null || (i == fromX && j == fromY) || !other.color.equals(piece.color)
+                        || Character.toUpperCase(other.symbol().charAt(0)) != letter) {
+                    continue;
+                }
+                for (int[] mv : g.getLegalMovesForPiece(i, j)) {
+                    if (mv[0] == toX && mv[1] == toY) {
+                        ambiguous = true;
+                        sameFile |= j == fromY;
+                        sameRank |= i == fromX;
+                        break;
+                    }
+                }
+            }
+        }
+        if (!ambiguous) return;
+        if (!sameFile) {
+            sb.append((char) ('a' + fromY));
+        } else if (!sameRank) {
+            sb.append(8 - fromX);
+        } else {
+            sb.append(square(fromX, fromY));
+        }
+    }
+
+    /**
+     * Resolves a SAN token against a position. Check marks and annotation
+     * glyphs are ignored; both "O-O" and "0-0" castling forms are accepted.
+     * The source is trusted to contain legal moves: only when two pieces could
+     * reach the target are candidates tested for legality, so typical moves
+     * cost a few board lookups.
+     * @return {fromX, fromY, toX, toY, promotion}
+     * @throws IllegalArgumentException If the token is malformed, illegal or ambiguous.
+     */
+    static int[] parse(ChessMain.ChessGame g, String san) {
+        String s = san;
+        int end = s.length();
+        while (end > 0 && "+#!?".indexOf(s.charAt(end - 1)) >= 0) end--;
+        s = s.substring(0, end);
+        boolean white = g.toMove.equals("white");
+        int homeRow = white ? 7 : 0;
+
+        if (s.equals("O-O") || s.equals("0-0")) {
+            return checked(g, san, new int[]{homeRow, 4, homeRow, 6, 'q'});
+        }
+        if (s.equals("O-O-O") || s.equals("0-0-0")) {
+            return checked(g, san, new int[]{homeRow, 4, homeRow, 2, 'q'});
+        }
+
+        char promotion = 'q';
+        int eq = s.indexOf('=');
+        if (eq >= 0 && eq + 1 < s.length()) {
+            promotion = Character.toLowerCase(s.charAt(eq + 1));
+            s = s.substring(0, eq);
+        } else if (s.length() > 2 && "QRBN".indexOf(s.charAt(s.length() - 1)) >= 0
+                && Character.isDigit(s.charAt(s.length() - 2))) {
+            promotion = Character.toLowerCase(s.charAt(s.length() - 1));
+            s = s.substring(0, s.length() - 1);
+        }
+        if (s.length() < 2) {
+            throw new IllegalArgumentException("Malformed SAN: " + san);
+        }
+
+        int toY = s.charAt(s.length() - 2) - 'a';
+        int toX = 8 - (s.charAt(s.length() - 1) - '0');
+        if (toX < 0 || toX > 7 || toY < 0 || toY > 7) {
+            throw new IllegalArgumentException("Malformed SAN: " + san);
+        }
+        char letter = Character.isUpperCase(s.charAt(0)) ? s.charAt(0) : 'P';
+        String hint = s.substring(letter == 'P' ? 0 : 1, s.length() - 2).replace("x", "");
+        int hintFile = -1, hintRank = -1;
+        for (char c : hint.toCharArray()) {
+            if (c >= 'a' && c <= 'h') hintFile = c - 'a';
+            else if (c >= '1' && c <= '8') hintRank = 8 - (c - '0');
+            else throw new IllegalArgumentException("Malformed SAN: " + san);
+        }
+
+        if (letter == 'P') {
+            int dir = white ? -1 : 1;
+            int fromY = hintFile >= 0 ? hintFile : toY;
+            int fromX = toX - dir;
+            if (fromY == toY && !isOwnPawn(g, fromX, fromY, white)) {
+                fromX = toX - 2 * dir;
+            }
+            return checked(g, san, new int[]{fromX, fromY, toX, toY, promotion});
+        }
+
+        java.util.List<int[]> candidates = new ArrayList<>(2);
+        for (int i = 0; i < 8; i++) {
+            if (hintRank >= 0 && i != hintRank) continue;
+            for (int j = 0; j < 8; j++) {
+                if (hintFile >= 0 && j != hintFile) continue;
+                ChessMain.Piece p = g.board[i][j];
+                if (p == null || p.color.equals("white") != white
+                        || Character.toUpperCase(p.symbol().charAt(0)) != letter) {
+                    continue;
+                }
+                for (int[] mv : p.getMoves(g.board, i, j)) {
+                    if (mv[0] == toX && mv[1] == toY) {
+                        candidates.add(new int[]{i, j, toX, toY, promotion});
+                        break;
+                    }
+                }
+            }
+        }
+        if (candidates.size() > 1) {
+            // Ambiguous only on pseudo-legal grounds, e.g. one of two knights is pinned
+            candidates.removeIf(c -> !isLegal(g, c));
+        }
+        if (candidates.size() != 1) {
+            throw new IllegalArgumentException((candidates.isEmpty() ? "Illegal" : "Ambiguous") + " move: " + san);
+        }
+        return candidates.get(0);
+    }
+
+    private static boolean isOwnPawn(ChessMain.ChessGame g, int x, int y, boolean white) {
+        if (x < 0 || x > 7) return false;
+        ChessMain.Piece p = g.board[x][y];
+        return p instanceof ChessMain.Pawn && p.color.equals("white") == white;
+    }
+
+    /**
+     * Cheap sanity check for pawn moves and castling, whose origin follows
+     * from the token alone: the right piece must stand on the origin square.
+     */
+    private static int[] checked(ChessMain.ChessGame g, String san, int[] move) {
+        ChessMain.Piece p = move[0] < 0 || move[0] > 7 || move[1] < 0 || move[1] > 7 ? null : g.board[move[0]][move[1]];
+        boolean castling = move[1] == 4 && Math.abs(move[3] - move[1]) == 2;
+        boolean expected = castling ? p instanceof ChessMain.King : p instanceof ChessMain.Pawn;
+        if (!expected || !p.color.equals(g.toMove)) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        return move;
+    }
+
+    private static boolean isLegal(ChessMain.ChessGame g, int[] move) {
+        ChessMain.Piece p = g.board[move[0]][move[1]];
+        if (p == null || !p.color.equals(g.toMove)) return false;
+        for (int[] mv : g.getLegalMovesForPiece(move[0], move[1])) {
+            if (mv[0] == move[2] && mv[1] == move[3]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The move in UCI long algebraic form, e.g. "e2e4" or "e7e8q".
+     */
+    static String toUci(ChessMain.ChessGame g, int fromX, int fromY, int toX, int toY, char promotion) {
+        String uci = square(fromX, fromY) + square(toX, toY);
+        if (g.board[fromX][fromY] instanceof ChessMain.Pawn && (toX == 0 || toX == 7)) {
+            uci += Character.toLowerCase(promotion);
+        }
+        return uci;
+    }
+
+    static String square(int x, int y) {
+        return "" + (char) ('a' + y) + (8 - x);
+    }
+}
@@ -0,0 +1,521 @@
+import java.util.ArrayList;
+
+/**
+ * Alpha-beta (negamax) search over {@link ChessMain.ChessGame}, independent of the UI.
+ * Scores are centipawns from the point of view of the side to move; mates are
+ * reported as {@code MATE_SCORE - ply} (negated when being mated). An instance keeps per-search state and
+ * must not be shared between threads, except for {@link #stop()}.
+ */
+public class Search {
+
+    static final int MATE_SCORE = 1_000_000;
+    static final int INFINITY = 2_000_000;
+    static final int MAX_PLY = 128;
+
+    // Half-width of the first aspiration window, and the depth from which it is used
+    static final int ASPIRATION_WINDOW = 50;
+    static final int ASPIRATION_MIN_DEPTH = 4;
+    static final int NULL_MOVE_MIN_DEPTH = 3;
+    // Late moves are reduced from this many moves searched on, at this remaining depth or more
+    static final int LMR_MIN_MOVES = 3;
+    static final int LMR_MIN_DEPTH = 3;
+    // How far below alpha the static eval must be, by remaining depth, before quiet moves are skipped
+    static final int[] FUTILITY_MARGIN = {0, 200, 500};
+
+    /**
+     * Switches for the selective parts of the search, so each can be measured on its own.
+     * Defaults come from {@code -Dchess.search.<name>=false}; all are on otherwise.
+     */
+    static class Options {
+        /** Principal variation search: null-window probes after the first move, re-searched if they fail high. */
+        boolean pvs = enabled("pvs");
+        /** A narrow root window around the previous iteration's score, widened when the score falls outside. */
+        boolean aspiration = enabled("aspiration");
+        /** Pass, and cut off if a reduced search still beats beta. */
+        boolean nullMove = enabled("nullMove");
+        /** Late move reductions for quiet moves ordered late. */
+        boolean lmr = enabled("lmr");
+        /** Skip quiet moves near the horizon when the static eval is far below alpha. */
+        boolean futility = enabled("futility");
+        /** Skip captures in quiescence that lose material by static exchange evaluation. */
+        boolean seePruning = enabled("seePruning");
+        /** The static evaluation at the leaves. */
+        Evaluation.Evaluator evaluator = Evaluation.defaultEvaluator();
+
+        private static boolean enabled(String name) {
+            return !"false".equals(System.getProperty("chess.search." + name));
+        }
+
+        /**
+         * Plain full-width alpha-beta, for comparison.
+         */
+        static Options none() {
+            Options o = new Options();
+            o.pvs = false;
+            o.aspiration = false;
+            o.nullMove = false;
+            o.lmr = false;
+            o.futility = false;
+            o.seePruning = false;
+            return o;
+        }
+    }
+
+    /**
+     * Bounds on a single search. Whichever limit is hit first stops it;
+     * the deepest completed iteration is returned.
+     */
+    static class Limits {
+        int depth = MAX_PLY;
+        long nodes = Long.MAX_VALUE;
+        long millis = Long.MAX_VALUE;
+
+        static Limits depth(int depth) {
+            Limits l = new Limits();
+            l.depth = depth;
+            return l;
+        }
+
+        /**
+         * No limit at all: runs until {@link Search#stop()} or a forced mate is found.
+         */
+        static Limits infinite() {
+            return new Limits();
+        }
+
+        Limits nodes(long nodes) {
+            this.nodes = nodes;
+            return this;
+        }
+
+        Limits millis(long millis) {
+            this.millis = millis;
+            return this;
+        }
+    }
+
+    /**
+     * One root move with its score and principal variation.
+     */
+    static class Line {
+        final int[][] move;
+        final int score;
+        /** The move itself followed by the expected reply sequence. */
+        final java.util.List<int[][]> pv;
+
+        Line(int[][] move, int score, java.util.List<int[][]> pv) {
+            this.move = move;
+            this.score = score;
+            this.pv = pv;
+        }
+    }
+
+    static class Result {
+        /** {{fromX, fromY}, {toX, toY}}, or null if the side to move has no legal move. */
+        final int[][] bestMove;
+        final int score;
+        final int depth;
+        final long nodes;
+        final long elapsedMillis;
+        /** The best lines, best first; more than one only when searched with multiPv > 1. */
+        final java.util.List<Line> lines;
+
+        Result(int[][] bestMove, int score, int depth, long nodes, long elapsedMillis, java.util.List<Line> lines) {
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.elapsedMillis = elapsedMillis;
+            this.lines = lines;
+        }
+
+        boolean isMate() {
+            return Math.abs(score) >= MATE_SCORE - MAX_PLY;
+        }
+    }
+
+    /**
+     * Receives progress from {@link #search(ChessMain.ChessGame, Limits, int, Listener)}.
+     * Called on the searching thread.
+     */
+    interface Listener {
+        /**
+         * An iteration completed; {@code result} holds its lines.
+         */
+        void onIteration(Result result);
+    }
+
+    private long nodes;
+    private long nodeLimit;
+    private long deadlineNanos;
+    private boolean aborted;
+    private volatile boolean stopRequested;
+    private SearchStats stats = new SearchStats();
+    private ChessEvents.SearchEvent event;
+    private final Options options;
+
+    // Principal variation collected at each ply of the current path
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final java.util.List<int[][]>[] pvAtPly = new java.util.List[MAX_PLY + 1];
+
+    public Search() {
+        this(new Options());
+    }
+
+    public Search(Options options) {
+        this.options = options;
+        for (int i = 0; i <= MAX_PLY; i++) {
+            pvAtPly[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Iterative deepening within the given limits.
+     */
+    Result search(ChessMain.ChessGame g, Limits limits) {
+        return search(g, limits, 1, null);
+    }
+
+    /**
+     * Iterative deepening that keeps the best {@code multiPv} root moves with exact
+     * scores and reports each completed iteration to {@code listener}, if any.
+     */
+    Result search(ChessMain.ChessGame g, Limits limits, int multiPv, Listener listener) {
+        long start = System.nanoTime();
+        nodes = 0;
+        nodeLimit = limits.nodes;
+        deadlineNanos = limits.millis == Long.MAX_VALUE ? Long.MAX_VALUE : start + limits.millis * 1_000_000L;
+        aborted = false;
+        stats = new SearchStats();
+        event = new ChessEvents.SearchEvent();
+        event.begin();
+
+        java.util.List<int[][]> moves = g.getAllLegalMoves(g.toMove);
+        if (moves.isEmpty()) {
+            int score = g.isInCheck(g.toMove) ? -MATE_SCORE : 0;
+            finish(start, multiPv, score);
+            return new Result(null, score, 0, 0, 0, new ArrayList<>());
+        }
+        Result result = new Result(moves.get(0), 0, 0, 0, 0, new ArrayList<>());
+        for (int depth = 1; depth <= limits.depth; depth++) {
+            java.util.List<Line> lines;
+            if (options.aspiration && multiPv == 1 && depth >= ASPIRATION_MIN_DEPTH && !result.isMate()) {
+                int low = result.score - ASPIRATION_WINDOW, high = result.score + ASPIRATION_WINDOW;
+                lines = searchRoot(g, moves, depth, 1, low, high);
+                if (!aborted && (lines.isEmpty() || lines.get(0).score >= high)) {
+                    // Outside the window the score is only a bound; search again without one
+                    lines = searchRoot(g, moves, depth, 1, -INFINITY, INFINITY);
+                }
+            } else {
+                lines = searchRoot(g, moves, depth, multiPv, -INFINITY, INFINITY);
+            }
+            if (aborted) {
+                break;
+            }
+            Line best = lines.get(0);
+            stats.depthCompleted(depth, nodes, System.nanoTime() - start);
+            result = new Result(best.move, best.score, depth, nodes, (System.nanoTime() - start) / 1_000_000, lines);
+            if (listener != null) {
+                listener.onIteration(result);
+            }
+            // Search the previous best lines first next time
+            for (int i = lines.size() - 1; i >= 0; i--) {
+                moves.remove(lines.get(i).move);
+                moves.add(0, lines.get(i).move);
+            }
+            if (Math.abs(best.score) >= MATE_SCORE - MAX_PLY && multiPv == 1) {
+                break;
+            }
+        }
+        finish(start, multiPv, result.score);
+        return result;
+    }
+
+    private void finish(long startNanos, int multiPv, int score) {
+        stats.finish(nodes, System.nanoTime() - startNanos);
+        SearchMetrics.INSTANCE.record(stats);
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = stats.depth;
+            event.nodes = nodes;
+            event.multiPv = multiPv;
+            event.score = score;
+            event.commit();
+        }
+        event = null;
+    }
+
+    /**
+     * Asks a running search to return as soon as possible, with its last completed iteration.
+     * May be called from any thread; a stopped instance stays stopped.
+     */
+    void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Searches every root move, keeping the best {@code multiPv} with exact scores.
+     * The window's lower bound is the worst score still in the list, so moves that
+     * cannot make it are refuted cheaply.
+     * @param floor Lower bound of the window; only moves scoring above it are kept.
+     * @param beta Upper bound of the window; a move reaching it ends the iteration.
+     * @return The kept lines, best first.
+     */
+    private java.util.List<Line> searchRoot(ChessMain.ChessGame g, java.util.List<int[][]> moves, int depth, int multiPv,
+                                            int floor, int beta) {
+        java.util.List<Line> lines = new ArrayList<>(multiPv + 1);
+        for (int[][] mv : moves) {
+            boolean full = lines.size() < multiPv;
+            int alpha = full ? floor : Math.max(floor, lines.get(lines.size() - 1).score);
+            ChessMain.ChessGame copy = g.deepCopy();
+            copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            int score;
+            if (full || !options.pvs) {
+                score = -negamax(copy, depth - 1, -beta, -alpha, 1, true);
+            } else {
+                score = -negamax(copy, depth - 1, -alpha - 1, -alpha, 1, true);
+                if (score > alpha && score < beta && !aborted) {
+                    score = -negamax(copy, depth - 1, -beta, -alpha, 1, true);
+                }
+            }
+            if (aborted) break;
+            if (score > alpha) {
+                java.util.List<int[][]> pv = new ArrayList<>(pvAtPly[1].size() + 1);
+                pv.add(mv);
+                pv.addAll(pvAtPly[1]);
+                int at = 0;
+                while (at < lines.size() && lines.get(at).score >= score) at++;
+                lines.add(at, new Line(mv, score, pv));
+                if (lines.size() > multiPv) {
+                    lines.remove(lines.size() - 1);
+                }
+            }
+            if (score >= beta) break;
+        }
+        return lines;
+    }
+
+    /**
+     * @param allowNull False right after a null move, so two passes never follow each other.
+     */
+    private int negamax(ChessMain.ChessGame g, int depth, int alpha, int beta, int ply, boolean allowNull) {
+        if (++nodes >= nodeLimit || ((nodes & 1023) == 0 && (stopRequested || System.nanoTime() > deadlineNanos))) {
+            aborted = true;
+        }
+        if (aborted) return 0;
+        pvAtPly[ply].clear();
+
+        // Any repetition is a draw to the search: the cycle gains nothing the first time round
+        if (g.repetitionCount() > 0) {
+            return 0;
+        }
+        java.util.List<int[][]> moves = g.getAllLegalMoves(g.toMove);
+        if (moves.isEmpty()) {
+            return g.isInCheck(g.toMove) ? -(MATE_SCORE - ply) : 0;
+        }
+        if (g.halfmoveClock >= 100) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return options.evaluator.evaluate(g);
+        }
+        if (depth <= 0) {
+            return quiesce(g, moves, alpha, beta, ply);
+        }
+
+        stats.interiorNodes++;
+        boolean pvNode = beta - alpha > 1;
+        boolean inCheck = g.isInCheck(g.toMove);
+        int staticEval = options.evaluator.evaluate(g);
+
+        // Null move: if passing still fails high on a reduced search, a real move will too
+        if (options.nullMove && allowNull && !pvNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH
+                && staticEval >= beta && Math.abs(beta) < MATE_SCORE - MAX_PLY && hasPieces(g, g.toMove)) {
+            int r = depth > 6 ? 3 : 2;
+            ChessMain.ChessGame copy = g.deepCopy();
+            copy.makeNullMove();
+            int score = -negamax(copy, depth - 1 - r, -beta, -beta + 1, ply + 1, false);
+            if (aborted) return 0;
+            if (score >= beta) {
+                return beta;
+            }
+        }
+
+        boolean futile = options.futility && !pvNode && !inCheck && depth < FUTILITY_MARGIN.length
+                && Math.abs(alpha) < MATE_SCORE - MAX_PLY && staticEval + FUTILITY_MARGIN[depth] <= alpha;
+
+        orderMoves(g, moves);
+        int best = -INFINITY;
+        int searched = 0;
+        for (int[][] mv : moves) {
+            boolean quiet = isQuiet(g, mv);
+            ChessMain.ChessGame copy = g.deepCopy();
+            copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            boolean reducible = quiet && !inCheck && (futile
+                    || (options.lmr && searched >= LMR_MIN_MOVES && depth >= LMR_MIN_DEPTH));
+            boolean givesCheck = reducible && copy.isInCheck(copy.toMove);
+
+            if (futile && quiet && !givesCheck) {
+                // Cannot raise alpha; the margin bounds what it could have scored
+                best = Math.max(best, staticEval + FUTILITY_MARGIN[depth]);
+                continue;
+            }
+
+            int score;
+            if (searched == 0) {
+                score = -negamax(copy, depth - 1, -beta, -alpha, ply + 1, true);
+            } else {
+                int reduction = reducible && !givesCheck && options.lmr
+                        && searched >= LMR_MIN_MOVES && depth >= LMR_MIN_DEPTH
+                        ? (searched >= 2 * LMR_MIN_MOVES ? 2 : 1) : 0;
+                int probeBeta = options.pvs ? alpha + 1 : beta;
+                score = -negamax(copy, depth - 1 - reduction, -probeBeta, -alpha, ply + 1, true);
+                if (score > alpha && reduction > 0 && !aborted) {
+                    score = -negamax(copy, depth - 1, -probeBeta, -alpha, ply + 1, true);
+                }
+                if (score > alpha && score < beta && probeBeta != beta && !aborted) {
+                    score = -negamax(copy, depth - 1, -beta, -alpha, ply + 1, true);
+                }
+            }
+            if (aborted) return 0;
+            if (score > best) best = score;
+            if (best > alpha) {
+                alpha = best;
+                java.util.List<int[][]> pv = pvAtPly[ply];
+                pv.clear();
+                pv.add(mv);
+                pv.addAll(pvAtPly[ply + 1]);
+            }
+            if (alpha >= beta) {
+                stats.betaCutoffs++;
+                if (searched == 0) stats.firstMoveCutoffs++;
+                break;
+            }
+            searched++;
+        }
+        return best;
+    }
+
+    /**
+     * Resolves captures and promotions past the horizon, so the static eval is only
+     * taken in quiet positions. The side to move may stand pat on the eval.
+     * @param moves The legal moves in {@code g}, already generated by the caller.
+     */
+    private int quiesce(ChessMain.ChessGame g, java.util.List<int[][]> moves, int alpha, int beta, int ply) {
+        int best = options.evaluator.evaluate(g);
+        if (best >= beta || ply >= MAX_PLY) return best;
+        if (best > alpha) alpha = best;
+
+        java.util.List<int[][]> captures = new ArrayList<>();
+        for (int[][] mv : moves) {
+            if (!isQuiet(g, mv)) captures.add(mv);
+        }
+        int[] see = orderMoves(g, captures);
+        for (int i = 0; i < captures.size(); i++) {
+            // Ordered best first, so the rest lose material too
+            if (options.seePruning && see[i] < 0) break;
+            int[][] mv = captures.get(i);
+            ChessMain.ChessGame copy = g.deepCopy();
+            copy.makeMove(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+            if (++nodes >= nodeLimit || ((nodes & 1023) == 0 && (stopRequested || System.nanoTime() > deadlineNanos))) {
+                aborted = true;
+            }
+            if (aborted) return 0;
+            pvAtPly[ply + 1].clear();
+            java.util.List<int[][]> replies = copy.getAllLegalMoves(copy.toMove);
+            int score = replies.isEmpty()
+                    ? (copy.isInCheck(copy.toMove) ? MATE_SCORE - ply - 1 : 0)
+                    : -quiesce(copy, replies, -beta, -alpha, ply + 1);
+            if (aborted) return 0;
+            if (score > best) {
+                best = score;
+                if (score > alpha) alpha = score;
+                if (alpha >= beta) break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sorts captures that win or break even by static exchange first (larger gains first,
+     * then most valuable victim), then promotions, then quiet moves in their generated
+     * order, and losing captures last.
+     * @return The static exchange value of each move in its new position; 0 for quiet moves.
+     */
+    private static int[] orderMoves(ChessMain.ChessGame g, java.util.List<int[][]> moves) {
+        int n = moves.size();
+        int[][][] sorted = moves.toArray(new int[n][][]);
+        int[] see = new int[n];
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[][] mv = sorted[i];
+            ChessMain.Piece victim = g.board[mv[1][0]][mv[1][1]];
+            if (isQuiet(g, mv)) {
+                keys[i] = 0;
+            } else if (victim == null && mv[0][1] == mv[1][1]) {
+                keys[i] = 1_000; // promotion by a push
+            } else {
+                see[i] = g.staticExchange(mv[0][0], mv[0][1], mv[1][0], mv[1][1]);
+                int victimValue = victim == null ? 100 : Evaluation.pieceValue(victim);
+                keys[i] = see[i] >= 0 ? 100_000 + see[i] * 16 + victimValue / 100 : -100_000 + see[i];
+            }
+        }
+        // Insertion sort: stable, and move lists are short
+        for (int i = 1; i < n; i++) {
+            int key = keys[i], value = see[i];
+            int[][] mv = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] < key) {
+                keys[j + 1] = keys[j];
+                see[j + 1] = see[j];
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            see[j + 1] = value;
+            sorted[j + 1] = mv;
+        }
+        for (int i = 0; i < n; i++) {
+            moves.set(i, sorted[i]);
+        }
+        return see;
+    }
+
+    /**
+     * @return Whether the move neither captures (en passant included) nor promotes.
+     */
+    static boolean isQuiet(ChessMain.ChessGame g, int[][] mv) {
+        if (g.board[mv[1][0]][mv[1][1]] != null) return false;
+        if (g.board[mv[0][0]][mv[0][1]] instanceof ChessMain.Pawn) {
+            return mv[0][1] == mv[1][1] && mv[1][0] != 0 && mv[1][0] != 7;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether {@code color} has a piece other than pawns and king; without one
+     *         zugzwang is common and passing is not a safe guess.
+     */
+    private static boolean hasPieces(ChessMain.ChessGame g, String color) {
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                ChessMain.Piece p = g.board[i][j];
+                if (p != null && p.color.equals(color) && !(p instanceof ChessMain.Pawn) && !(p instanceof ChessMain.King)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The counters of the last search; complete once it returned.
+     */
+    SearchStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,128 @@
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide aggregate of finished searches: the last and slowest search in full,
+ * plus running totals. Exposed over JMX and as JSON.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+    static final SearchMetrics INSTANCE = new SearchMetrics();
+
+    private long searches;
+    private long totalNodes;
+    private long totalNanos;
+    private SearchStats last;
+    private SearchStats slowest;
+
+    private SearchMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("chess:type=Search"));
+        } catch (Exception | LinkageError e) {
+            // JMX is a diagnostic extra; searching works without it
+            System.err.println("Search metrics not registered with JMX: " + e);
+        }
+    }
+
+    /**
+     * Adds a finished search. Called on the searching thread.
+     */
+    synchronized void record(SearchStats stats) {
+        searches++;
+        totalNodes += stats.nodes;
+        totalNanos += stats.elapsedNanos;
+        last = stats;
+        if (slowest == null || stats.elapsedNanos > slowest.elapsedNanos) {
+            slowest = stats;
+        }
+    }
+
+    synchronized SearchStats getLast() {
+        return last;
+    }
+
+    @Override
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    @Override
+    public synchronized long getTotalNodes() {
+        return totalNodes;
+    }
+
+    @Override
+    public synchronized long getTotalTimeMillis() {
+        return totalNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized long getLastNodes() {
+        return last == null ? 0 : last.nodes;
+    }
+
+    @Override
+    public synchronized long getLastNodesPerSecond() {
+        return last == null ? 0 : last.nodesPerSecond();
+    }
+
+    @Override
+    public synchronized int getLastDepth() {
+        return last == null ? 0 : last.depth;
+    }
+
+    @Override
+    public synchronized long getLastTimeMillis() {
+        return last == null ? 0 : last.elapsedMillis();
+    }
+
+    @Override
+    public synchronized double getLastBetaCutoffRate() {
+        return last == null ? 0 : last.betaCutoffRate();
+    }
+
+    @Override
+    public synchronized double getLastFirstMoveCutoffRate() {
+        return last == null ? 0 : last.firstMoveCutoffRate();
+    }
+
+    @Override
+    public synchronized double getLastEffectiveBranchingFactor() {
+        return last == null ? 0 : last.effectiveBranchingFactor();
+    }
+
+    @Override
+    public synchronized double getLastTtHitRate() {
+        return last == null ? Double.NaN : last.ttHitRate();
+    }
+
+    @Override
+    public synchronized String getSlowestSearchJson() {
+        return slowest == null ? "null" : slowest.toJson();
+    }
+
+    @Override
+    public synchronized String getLastSearchJson() {
+        return last == null ? "null" : last.toJson();
+    }
+
+    @Override
+    public synchronized void reset() {
+        searches = 0;
+        totalNodes = 0;
+        totalNanos = 0;
+        last = null;
+        slowest = null;
+    }
+
+    /**
+     * Exports the totals and the last and slowest searches as JSON.
+     */
+    synchronized String toJson() {
+        return "{\"searches\":" + searches
+                + ",\"totalNodes\":" + totalNodes
+                + ",\"totalTimeMs\":" + totalNanos / 1_000_000
+                + ",\"last\":" + getLastSearchJson()
+                + ",\"slowest\":" + getSlowestSearchJson() + "}";
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * JMX view of {@link SearchMetrics}, registered as {@code chess:type=Search}.
+ */
+public interface SearchMetricsMBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    long getTotalTimeMillis();
+
+    long getLastNodes();
+
+    long getLastNodesPerSecond();
+
+    int getLastDepth();
+
+    long getLastTimeMillis();
+
+    double getLastBetaCutoffRate();
+
+    double getLastFirstMoveCutoffRate();
+
+    double getLastEffectiveBranchingFactor();
+
+    double getLastTtHitRate();
+
+    /** The slowest search so far, as JSON. */
+    String getSlowestSearchJson();
+
+    String getLastSearchJson();
+
+    void reset();
+}
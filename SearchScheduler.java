@@ -0,0 +1,308 @@
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import javax.management.ObjectName;
+
+/**
+ * One fixed pool of search threads, one per core, shared by every game that wants a
+ * computer move. Requests wait in a queue ordered by deadline: a request may wait about
+ * as long as its game could spend on the move, so a game low on the clock goes first
+ * but a game with a long clock still gets its turn once it has waited that long.
+ * <p>
+ * Each search gets a time slice: the request's own limit, capped by a share of the
+ * game's remaining clock less the time already spent waiting, and by {@link #MAX_SLICE_MILLIS}
+ * so no single game can hold a thread indefinitely. While more requests wait than there
+ * are threads, slices shrink in proportion, down to {@link #MIN_SLICE_MILLIS}; the engine
+ * plays shallower moves rather than letting the queue grow without bound. Past
+ * {@code maxQueued} waiting requests new ones are refused outright, so callers can tell
+ * players the server is busy instead of keeping them waiting.
+ * <p>
+ * A game has at most one request queued or running; a second is refused with an
+ * {@link IllegalStateException}.
+ */
+public class SearchScheduler implements SearchSchedulerMBean {
+
+    /** Moves the remaining clock is assumed to have to cover. */
+    static final int MOVES_TO_GO = 30;
+    static final long MAX_SLICE_MILLIS = 5000;
+    static final long MIN_SLICE_MILLIS = 20;
+    /** How long a request without a clock may wait before it goes ahead of others. */
+    static final long UNTIMED_WAIT_MILLIS = 2000;
+    /** Waiting requests allowed per thread before new ones are refused. */
+    static final int QUEUED_PER_WORKER = 64;
+
+    private static SearchScheduler shared;
+
+    private final int workers;
+    private final int maxQueued;
+    private final PriorityQueue<Request> queue = new PriorityQueue<>();
+    private final Set<Engine.Session> busy = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean shutdown;
+    private long sequence;
+
+    private int running;
+    private int maxQueueDepth;
+    private long submitted;
+    private long completed;
+    private long rejected;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long totalSliceMillis;
+
+    /**
+     * @param workers Search threads.
+     * @param maxQueued Waiting requests allowed before new ones are refused.
+     */
+    SearchScheduler(int workers, int maxQueued) {
+        if (workers < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("workers " + workers + ", maxQueued " + maxQueued);
+        }
+        this.workers = workers;
+        this.maxQueued = maxQueued;
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(this::work, "chess-search-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * The process-wide scheduler, one thread per core, created on first use.
+     */
+    static synchronized SearchScheduler shared() {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            shared = new SearchScheduler(cores, cores * QUEUED_PER_WORKER);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName("chess:type=Scheduler"));
+            } catch (Exception | LinkageError e) {
+                // JMX is a diagnostic extra; scheduling works without it
+                System.err.println("Search scheduler not registered with JMX: " + e);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Queues a search of {@code session}'s current position. The returned future fails with
+     * {@link RejectedExecutionException} if the queue is full or the scheduler shut down, and
+     * with {@link IllegalStateException} if the session already has a request in. Cancelling
+     * it drops a waiting request, or stops a running one early.
+     * @param clockMillis Time left on the game's clock, or {@link Long#MAX_VALUE} if untimed.
+     * @param listener Told of each completed iteration; may be null.
+     */
+    CompletableFuture<Engine.Result> submit(Engine.Session session, Search.Limits limits, long clockMillis,
+                                            Engine.Listener listener) {
+        CompletableFuture<Engine.Result> future = new CompletableFuture<>();
+        long now = System.nanoTime();
+        long mayWait = clockMillis == Long.MAX_VALUE ? UNTIMED_WAIT_MILLIS : Math.max(0, clockMillis) / MOVES_TO_GO;
+        Request request;
+        synchronized (this) {
+            if (shutdown || queue.size() >= maxQueued) {
+                rejected++;
+                future.completeExceptionally(new RejectedExecutionException(shutdown
+                        ? "Search scheduler is shut down" : "Search queue full (" + queue.size() + " waiting)"));
+                return future;
+            }
+            if (!busy.add(session)) {
+                future.completeExceptionally(new IllegalStateException("This session already has a search queued"));
+                return future;
+            }
+            request = new Request(session, limits, clockMillis, listener, future, now,
+                    now + mayWait * 1_000_000, sequence++);
+            queue.add(request);
+            submitted++;
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            notify();
+        }
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) cancelled(request);
+        });
+        return future;
+    }
+
+    /**
+     * Takes a cancelled request out of the queue, freeing its place and its session at
+     * once; if a worker already took it, stops the search instead.
+     */
+    private void cancelled(Request r) {
+        synchronized (this) {
+            if (queue.remove(r)) {
+                busy.remove(r.session);
+                notify();
+                return;
+            }
+        }
+        r.session.stop();
+    }
+
+    /**
+     * Refuses new requests and fails the waiting ones; running searches finish.
+     */
+    void shutdown() {
+        java.util.List<Request> dropped;
+        synchronized (this) {
+            shutdown = true;
+            dropped = new java.util.ArrayList<>(queue);
+            queue.clear();
+            for (Request r : dropped) busy.remove(r.session);
+            notifyAll();
+        }
+        for (Request r : dropped) {
+            r.future.completeExceptionally(new RejectedExecutionException("Search scheduler is shut down"));
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Request r;
+            int waiting;
+            synchronized (this) {
+                while (queue.isEmpty() && !shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) return;
+                r = queue.poll();
+                waiting = queue.size();
+                if (r.future.isDone()) {
+                    busy.remove(r.session);
+                    continue;
+                }
+                running++;
+            }
+            long waitNanos = System.nanoTime() - r.submitNanos;
+            long slice = sliceMillis(r, waitNanos / 1_000_000, waiting);
+            Search.Limits limits = Search.Limits.depth(r.limits.depth).nodes(r.limits.nodes).millis(slice);
+            Engine.Result result = null;
+            Throwable failure = null;
+            try {
+                result = r.session.search(limits, r.listener);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            // Free the session first, so a caller may queue its next search from the future's callbacks
+            synchronized (this) {
+                running--;
+                completed++;
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+                totalSliceMillis += slice;
+                busy.remove(r.session);
+            }
+            if (failure == null) {
+                r.future.complete(result);
+            } else {
+                r.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * The time a request may search, given how long it waited and how many wait behind it.
+     */
+    private long sliceMillis(Request r, long waitedMillis, int waiting) {
+        long slice = Math.min(r.limits.millis, MAX_SLICE_MILLIS);
+        if (r.clockMillis != Long.MAX_VALUE) {
+            slice = Math.min(slice, r.clockMillis / MOVES_TO_GO - waitedMillis);
+        }
+        if (waiting > workers) {
+            slice = slice * workers / waiting;
+        }
+        return Math.max(slice, Math.min(MIN_SLICE_MILLIS, r.limits.millis));
+    }
+
+    private static final class Request implements Comparable<Request> {
+        final Engine.Session session;
+        final Search.Limits limits;
+        final long clockMillis;
+        final Engine.Listener listener;
+        final CompletableFuture<Engine.Result> future;
+        final long submitNanos;
+        final long deadlineNanos;
+        final long sequence;
+
+        Request(Engine.Session session, Search.Limits limits, long clockMillis, Engine.Listener listener,
+                CompletableFuture<Engine.Result> future, long submitNanos, long deadlineNanos, long sequence) {
+            this.session = session;
+            this.limits = limits;
+            this.clockMillis = clockMillis;
+            this.listener = listener;
+            this.future = future;
+            this.submitNanos = submitNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Request o) {
+            int c = Long.compare(deadlineNanos - o.deadlineNanos, 0);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    @Override
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    @Override
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    @Override
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized double getMeanWaitMillis() {
+        return completed == 0 ? 0 : totalWaitNanos / 1e6 / completed;
+    }
+
+    @Override
+    public synchronized long getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized double getMeanSliceMillis() {
+        return completed == 0 ? 0 : (double) totalSliceMillis / completed;
+    }
+
+    @Override
+    public synchronized void reset() {
+        maxQueueDepth = queue.size();
+        submitted = completed = rejected = 0;
+        totalWaitNanos = maxWaitNanos = 0;
+        totalSliceMillis = 0;
+    }
+}
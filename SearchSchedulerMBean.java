@@ -0,0 +1,31 @@
+/**
+ * JMX view of the shared {@link SearchScheduler}, registered as {@code chess:type=Scheduler}.
+ */
+public interface SearchSchedulerMBean {
+
+    int getWorkers();
+
+    /** Requests waiting for a worker now. */
+    int getQueueDepth();
+
+    /** The most requests that have waited at once. */
+    int getMaxQueueDepth();
+
+    int getRunning();
+
+    long getSubmitted();
+
+    long getCompleted();
+
+    /** Requests turned away because the queue was full. */
+    long getRejected();
+
+    double getMeanWaitMillis();
+
+    long getMaxWaitMillis();
+
+    /** Mean time a search was allowed, after shrinking for load. */
+    double getMeanSliceMillis();
+
+    void reset();
+}
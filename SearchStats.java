@@ -0,0 +1,102 @@
+import java.util.Locale;
+
+/**
+ * Counters for one search, filled in by {@link Search} as it runs.
+ *
+ * Plain fields incremented on the searching thread; an instance is handed to other
+ * threads only after the search finished, through {@link SearchMetrics}.
+ */
+public class SearchStats {
+
+    long nodes;
+    /** Nodes at which moves were searched (not leaves, mates or cutoffs by limits). */
+    long interiorNodes;
+    long betaCutoffs;
+    /** Beta cutoffs caused by the first move searched, a measure of move ordering quality. */
+    long firstMoveCutoffs;
+    long ttProbes;
+    long ttHits;
+    int depth;
+    long elapsedNanos;
+    /** Cumulative nodes and elapsed time when each depth completed, indexed by depth. */
+    final long[] nodesAtDepth = new long[Search.MAX_PLY + 1];
+    final long[] nanosAtDepth = new long[Search.MAX_PLY + 1];
+
+    void depthCompleted(int depth, long nodes, long elapsedNanos) {
+        this.depth = depth;
+        nodesAtDepth[depth] = nodes;
+        nanosAtDepth[depth] = elapsedNanos;
+    }
+
+    /**
+     * Final totals, including any unfinished iteration.
+     */
+    void finish(long nodes, long elapsedNanos) {
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    long nodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    double betaCutoffRate() {
+        return interiorNodes == 0 ? 0 : (double) betaCutoffs / interiorNodes;
+    }
+
+    double firstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    /**
+     * @return The TT hit rate, or NaN when the search used no transposition table.
+     */
+    double ttHitRate() {
+        return ttProbes == 0 ? Double.NaN : (double) ttHits / ttProbes;
+    }
+
+    /**
+     * Effective branching factor: the growth in nodes from the previous iteration to
+     * the last one, or the depth-th root of the node count after a single iteration.
+     */
+    double effectiveBranchingFactor() {
+        if (depth >= 2 && nodesAtDepth[depth - 1] > 0) {
+            return (double) (nodesAtDepth[depth] - nodesAtDepth[depth - 1])
+                    / Math.max(1, nodesAtDepth[depth - 1] - (depth >= 3 ? nodesAtDepth[depth - 2] : 0));
+        }
+        return depth == 0 ? 0 : Math.pow(Math.max(1, nodes), 1.0 / depth);
+    }
+
+    long elapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"nodes\":").append(nodes)
+          .append(",\"nps\":").append(nodesPerSecond())
+          .append(",\"depth\":").append(depth)
+          .append(",\"timeMs\":").append(elapsedMillis())
+          .append(",\"betaCutoffRate\":").append(format(betaCutoffRate()))
+          .append(",\"firstMoveCutoffRate\":").append(format(firstMoveCutoffRate()))
+          .append(",\"effectiveBranchingFactor\":").append(format(effectiveBranchingFactor()))
+          .append(",\"ttHitRate\":").append(ttProbes == 0 ? "null" : format(ttHitRate()))
+          .append(",\"perDepth\":[");
+        boolean first = true;
+        for (int d = 1; d <= depth; d++) {
+            // A fixed-depth search records only its single iteration
+            if (nodesAtDepth[d] == 0) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"depth\":").append(d)
+              .append(",\"nodes\":").append(nodesAtDepth[d])
+              .append(",\"timeMs\":").append(String.format(Locale.ROOT, "%.3f", nanosAtDepth[d] / 1e6))
+              .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String format(double v) {
+        return String.format(Locale.ROOT, "%.4f", v);
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broadcasts a game to read-only spectators over plain TCP.
+ *
+ * Each move is encoded exactly once into an immutable frame; every spectator
+ * queues a {@link ByteBuffer#duplicate() duplicate} of it, so fan-out costs a
+ * queue append and a non-blocking write per viewer, never a re-encode. A single
+ * selector thread serves all connections.
+ *
+ * Wire format (big-endian), every frame prefixed with its type byte:
+ * <pre>
+ *   FRAME_SNAPSHOT: int seq, short fenLength, fen (UTF-8)   -- position after move #seq
+ *   FRAME_MOVE:     int seq, byte fromX, byte fromY, byte toX, byte toY
+ * </pre>
+ * Late joiners receive the current snapshot first. A spectator whose backlog
+ * exceeds the lag limit has it discarded and is skipped ahead to a fresh snapshot.
+ */
+public class SpectatorHub {
+
+    static final byte FRAME_SNAPSHOT = 1;
+    static final byte FRAME_MOVE = 2;
+
+    private final int port;
+    private final int maxLagFrames;
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final List<Spectator> spectators = new ArrayList<>();
+    private Selector selector;
+    private ServerSocketChannel server;
+    private volatile boolean running;
+
+    // Owned by the selector thread
+    private int seq = 0;
+    private String fen;
+    private ByteBuffer snapshotFrame;
+
+    private final AtomicLong framesEncoded = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong lagResyncs = new AtomicLong();
+    private volatile int spectatorCount;
+
+    private static final class Spectator {
+        final SocketChannel channel;
+        final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+
+        Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * @param port Port spectators connect to.
+     * @param maxLagFrames Frames a spectator may have queued before it is skipped ahead.
+     */
+    public SpectatorHub(int port, int maxLagFrames) {
+        this.port = port;
+        this.maxLagFrames = maxLagFrames;
+    }
+
+    /**
+     * Binds the port and starts the selector thread.
+     * @param initialFen Position shown to spectators until the first move.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start(String initialFen) throws IOException {
+        this.fen = initialFen;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        Thread t = new Thread(this::loop, "chess-spectators");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Spectators can watch on port " + port);
+    }
+
+    /**
+     * Broadcasts a move. May be called from any thread.
+     * @param move {fromX, fromY, toX, toY}
+     * @param fenAfter Position after the move, used for late joiners.
+     */
+    public void publishMove(int[] move, String fenAfter) {
+        submit(() -> {
+            seq++;
+            fen = fenAfter;
+            snapshotFrame = null;
+            ByteBuffer frame = ByteBuffer.allocate(9);
+            frame.put(FRAME_MOVE).putInt(seq)
+                    .put((byte) move[0]).put((byte) move[1]).put((byte) move[2]).put((byte) move[3]);
+            broadcast(frame);
+        });
+    }
+
+    /**
+     * Replaces the position wholesale, e.g. after a network resync.
+     */
+    public void publishSnapshot(String newFen) {
+        submit(() -> {
+            fen = newFen;
+            snapshotFrame = null;
+            broadcast(currentSnapshot());
+        });
+    }
+
+    private void submit(Runnable task) {
+        if (!running) return;
+        pending.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Encodes the current position at most once per move, shared by every joiner.
+     */
+    private ByteBuffer currentSnapshot() {
+        if (snapshotFrame == null) {
+            byte[] fenBytes = fen.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer frame = ByteBuffer.allocate(7 + fenBytes.length);
+            frame.put(FRAME_SNAPSHOT).putInt(seq).putShort((short) fenBytes.length).put(fenBytes);
+            frame.flip();
+            snapshotFrame = frame.asReadOnlyBuffer();
+            framesEncoded.incrementAndGet();
+        }
+        return snapshotFrame;
+    }
+
+    private void broadcast(ByteBuffer frame) {
+        if (!frame.isReadOnly()) {
+            frame.flip();
+            frame = frame.asReadOnlyBuffer();
+            framesEncoded.incrementAndGet();
+        }
+        for (Spectator s : new ArrayList<>(spectators)) {
+            if (s.queue.size() >= maxLagFrames) {
+                // Too far behind: drop the backlog and jump straight to the present. A frame
+                // already partly written has to finish, or the stream would be cut mid-frame.
+                ByteBuffer head = s.queue.peek();
+                s.queue.clear();
+                if (head != null && head.position() > 0) s.queue.add(head);
+                s.queue.add(currentSnapshot().duplicate());
+                lagResyncs.incrementAndGet();
+            } else {
+                s.queue.add(frame.duplicate());
+            }
+            flush(s);
+        }
+    }
+
+    private void loop() {
+        try {
+            serve();
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void serve() {
+        ByteBuffer discard = ByteBuffer.allocate(256);
+        while (running) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Spectator s = (Spectator) key.attachment();
+                        if (key.isReadable()) {
+                            // Spectators are read-only; anything they send is ignored
+                            discard.clear();
+                            int read;
+                            try {
+                                read = s.channel.read(discard);
+                            } catch (IOException e) {
+                                read = -1;
+                            }
+                            if (read < 0) {
+                                drop(s);
+                                continue;
+                            }
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(s);
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Spectator hub error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) return;
+        ch.configureBlocking(false);
+        ch.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        Spectator s = new Spectator(ch);
+        ch.register(selector, SelectionKey.OP_READ, s);
+        spectators.add(s);
+        spectatorCount = spectators.size();
+        s.queue.add(currentSnapshot().duplicate());
+        flush(s);
+    }
+
+    private void flush(Spectator s) {
+        try {
+            while (!s.queue.isEmpty()) {
+                ByteBuffer head = s.queue.peek();
+                bytesWritten.addAndGet(s.channel.write(head));
+                if (head.hasRemaining()) break;
+                s.queue.poll();
+            }
+            SelectionKey key = s.channel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(s.queue.isEmpty() ? SelectionKey.OP_READ
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            drop(s);
+        }
+    }
+
+    private void drop(Spectator s) {
+        spectators.remove(s);
+        spectatorCount = spectators.size();
+        try {
+            s.channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    public int getSpectatorCount() {
+        return spectatorCount;
+    }
+
+    /**
+     * Exports fan-out statistics as JSON.
+     */
+    public String exportStats() {
+        return "{\"spectators\":" + spectatorCount
+                + ",\"framesEncoded\":" + framesEncoded.get()
+                + ",\"bytesWritten\":" + bytesWritten.get()
+                + ",\"lagResyncs\":" + lagResyncs.get() + "}";
+    }
+
+    /**
+     * Disconnects every spectator and stops the selector thread. The selector thread does
+     * the disconnecting, as it owns the spectator list.
+     */
+    public void close() {
+        running = false;
+        if (selector != null) selector.wakeup();
+    }
+
+    /**
+     * Closes every connection. Runs on the selector thread as it exits.
+     */
+    private void shutdown() {
+        for (Spectator s : new ArrayList<>(spectators)) {
+            drop(s);
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+}
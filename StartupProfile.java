@@ -0,0 +1,60 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Milestones of application startup, measured from JVM start.
+ *
+ * The report is printed to stderr once the first frame with real piece images
+ * has been painted. Set -Dchess.startup.quiet=true to suppress it.
+ */
+final class StartupProfile {
+
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+    private static boolean reported;
+
+    private StartupProfile() {}
+
+    /**
+     * Records a milestone; only its first occurrence counts.
+     */
+    static synchronized void mark(String milestone) {
+        MARKS.putIfAbsent(milestone, System.currentTimeMillis() - JVM_START);
+    }
+
+    static synchronized boolean has(String milestone) {
+        return MARKS.containsKey(milestone);
+    }
+
+    /**
+     * Prints every milestone, once.
+     */
+    static synchronized void report() {
+        if (reported) return;
+        reported = true;
+        if (Boolean.getBoolean("chess.startup.quiet")) return;
+        StringBuilder sb = new StringBuilder("Startup:");
+        for (Map.Entry<String, Long> e : MARKS.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue()).append("ms");
+        }
+        Long window = MARKS.get("window"), firstFrame = MARKS.get("firstFrame");
+        if (window != null && firstFrame != null) {
+            // Excludes the time spent in the opponent dialogs before the window opens
+            sb.append(" (time to first frame ").append(firstFrame - window).append("ms)");
+        }
+        System.err.println(sb);
+    }
+
+    /**
+     * @return The milestones as JSON, in milliseconds since JVM start.
+     */
+    static synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, Long> e : MARKS.entrySet()) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('"').append(e.getKey()).append("\":").append(e.getValue());
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Texel-style tuning of the {@link Evaluation} weights against game results.
+ *
+ * Each labelled position becomes a sparse row of (term, count) pairs in flat primitive
+ * arrays, so millions fit in a few hundred megabytes and a pass over them is a tight
+ * loop. The evaluation is linear in its weights, so the mean squared error between
+ * the result and {@code sigmoid(K * eval)} has an exact gradient. The gradient is
+ * summed in parallel over slices of the rows and fed to Adam. K is fitted first,
+ * to the starting weights, and then held fixed.
+ *
+ * Input is either a PGN file, where every position from the tenth ply on that is not
+ * in check is labelled with its game's result, or one position per line: a FEN followed
+ * by the result as "1-0", "0-1", "1/2-1/2" or a score 1.0 / 0.5 / 0.0 (white's view).
+ *
+ * Usage: java Tuner positions.epd|games.pgn [--out eval.weights] [--epochs N] [--threads N]
+ */
+public class Tuner {
+
+    private static final int SKIP_PLIES = 10;
+    private static final double LN10 = Math.log(10);
+
+    // Rows: results[i] is 0, 1 or 2 for a black win, draw or white win; the row's terms
+    // and counts are terms/counts[rowStart[i], rowStart[i + 1])
+    private byte[] results = new byte[1 << 16];
+    private int[] rowStart = new int[(1 << 16) + 1];
+    private short[] terms = new short[1 << 20];
+    private byte[] counts = new byte[1 << 20];
+    private int rows;
+
+    private final int[] scratch = new int[Evaluation.TERMS];
+    private final int[] touched = new int[Evaluation.TERMS];
+
+    /**
+     * Adds a position labelled with its game's result (2 white win, 1 draw, 0 black win).
+     */
+    void add(ChessMain.ChessGame g, int result) {
+        int n = 0;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                ChessMain.Piece p = g.board[x][y];
+                if (p == null) continue;
+                int piece = Zobrist.pieceIndex(p);
+                int type = piece % 6;
+                boolean white = piece < 6;
+                int sign = white ? 1 : -1;
+                if (type != 5) n = count(Evaluation.MATERIAL + type, sign, n);
+                n = count(Evaluation.psqt(type, x, y, white), sign, n);
+            }
+        }
+        if (rows + 1 >= results.length) {
+            results = Arrays.copyOf(results, results.length * 2);
+            rowStart = Arrays.copyOf(rowStart, results.length + 1);
+        }
+        int start = rowStart[rows];
+        if (start + n > terms.length) {
+            int size = Math.max(terms.length * 2, start + n);
+            terms = Arrays.copyOf(terms, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+        int end = start;
+        for (int i = 0; i < n; i++) {
+            int t = touched[i];
+            if (scratch[t] != 0) {
+                terms[end] = (short) t;
+                counts[end++] = (byte) scratch[t];
+            }
+            scratch[t] = 0;
+        }
+        results[rows] = (byte) result;
+        rowStart[++rows] = end;
+    }
+
+    private int count(int term, int sign, int n) {
+        if (scratch[term] == 0) touched[n++] = term;
+        scratch[term] += sign;
+        // A term that cancels out to zero is skipped when the row is written
+        return n;
+    }
+
+    int size() {
+        return rows;
+    }
+
+    void loadPgn(File file) throws IOException {
+        try (PgnReader reader = PgnReader.open(file)) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                int result = resultCode(game.getResult());
+                if (result < 0) continue;
+                try {
+                    ChessMain.ChessGame g = game.startingPosition();
+                    List<String> moves = game.getMoves();
+                    for (int ply = 0; ply < moves.size(); ply++) {
+                        int[] mv = San.parse(g, moves.get(ply));
+                        g.makeMove(mv[0], mv[1], mv[2], mv[3], (char) mv[4]);
+                        if (ply + 1 >= SKIP_PLIES && !g.isInCheck(g.toMove)) {
+                            add(g, result);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Keep the positions up to the bad move
+                }
+            }
+        }
+    }
+
+    void loadPositions(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(file), 1 << 16)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length < 5) {
+                    System.err.println("Line " + lineNo + ": no result");
+                    continue;
+                }
+                int fenFields = 4;
+                while (fenFields < 6 && fenFields < fields.length - 1 && fields[fenFields].matches("\\d+")) fenFields++;
+                String fen = String.join(" ", Arrays.copyOf(fields, fenFields));
+                int result = resultCode(String.join(" ", Arrays.copyOfRange(fields, fenFields, fields.length)));
+                if (result < 0) {
+                    System.err.println("Line " + lineNo + ": no result");
+                    continue;
+                }
+                try {
+                    add(ChessMain.ChessGame.fromFen(fen), result);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Line " + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 2, 1 or 0 for a white win, draw or black win, or -1 if {@code s} names no result.
+     */
+    static int resultCode(String s) {
+        if (s.contains("1/2") || s.contains("0.5")) return 1;
+        if (s.contains("1-0") || s.matches("[^0-9]*1(\\.0*)?[^0-9]*")) return 2;
+        if (s.contains("0-1") || s.matches("[^0-9]*0(\\.0*)?[^0-9]*")) return 0;
+        return -1;
+    }
+
+    /**
+     * Mean squared error of the rows in [from, to); if {@code gradient} is given, adds
+     * the gradient of the summed squared error to it.
+     */
+    private double error(double[] weights, double k, int from, int to, double[] gradient) {
+        double sum = 0;
+        double scale = k * LN10 / 400;
+        for (int i = from; i < to; i++) {
+            double eval = 0;
+            for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+                eval += weights[terms[j]] * counts[j];
+            }
+            double sigmoid = 1 / (1 + Math.pow(10, -k * eval / 400));
+            double diff = results[i] / 2.0 - sigmoid;
+            sum += diff * diff;
+            if (gradient != null) {
+                double d = -2 * diff * sigmoid * (1 - sigmoid) * scale;
+                for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+                    gradient[terms[j]] += d * counts[j];
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Error over all rows, split across the pool; fills {@code gradient} (mean) if given.
+     */
+    private double error(ExecutorService pool, int threads, double[] weights, double k, double[] gradient)
+            throws Exception {
+        List<Future<double[]>> parts = new ArrayList<>();
+        int slice = (rows + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = Math.min(rows, t * slice), to = Math.min(rows, from + slice);
+            parts.add(pool.submit(() -> {
+                double[] local = gradient == null ? null : new double[weights.length];
+                double e = error(weights, k, from, to, local);
+                double[] out = local == null ? new double[1] : Arrays.copyOf(local, local.length + 1);
+                out[out.length - 1] = e;
+                return out;
+            }));
+        }
+        double total = 0;
+        if (gradient != null) Arrays.fill(gradient, 0);
+        for (Future<double[]> f : parts) {
+            double[] part = f.get();
+            total += part[part.length - 1];
+            if (gradient != null) {
+                for (int i = 0; i < gradient.length; i++) gradient[i] += part[i] / rows;
+            }
+        }
+        return total / rows;
+    }
+
+    /**
+     * The sigmoid scale that best fits the results to {@code weights}, by golden-section search.
+     */
+    private double fitK(ExecutorService pool, int threads, double[] weights) throws Exception {
+        double lo = 0.1, hi = 4;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 30; i++) {
+            double a = hi - ratio * (hi - lo), b = lo + ratio * (hi - lo);
+            if (error(pool, threads, weights, a, null) < error(pool, threads, weights, b, null)) {
+                hi = b;
+            } else {
+                lo = a;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * Runs Adam from the current weights.
+     * @return The tuned weights, rounded to centipawns.
+     */
+    int[] tune(int epochs, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int[] start = Evaluation.weights();
+            double[] w = new double[start.length];
+            for (int i = 0; i < w.length; i++) w[i] = start[i];
+            double k = fitK(pool, threads, w);
+            System.err.printf(Locale.ROOT, "%,d positions, K = %.3f, start error %.6f%n",
+                    rows, k, error(pool, threads, w, k, null));
+
+            double rate = 1.0, beta1 = 0.9, beta2 = 0.999, epsilon = 1e-8;
+            double[] gradient = new double[w.length], m = new double[w.length], v = new double[w.length];
+            double last = Double.MAX_VALUE;
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                double e = error(pool, threads, w, k, gradient);
+                for (int i = 0; i < w.length; i++) {
+                    m[i] = beta1 * m[i] + (1 - beta1) * gradient[i];
+                    v[i] = beta2 * v[i] + (1 - beta2) * gradient[i] * gradient[i];
+                    double mHat = m[i] / (1 - Math.pow(beta1, epoch));
+                    double vHat = v[i] / (1 - Math.pow(beta2, epoch));
+                    w[i] -= rate * mHat / (Math.sqrt(vHat) + epsilon);
+                }
+                if (epoch % 50 == 0 || epoch == epochs) {
+                    System.err.printf(Locale.ROOT, "epoch %d error %.6f%n", epoch, e);
+                    if (last - e < 1e-8) break;
+                    last = e;
+                }
+            }
+            int[] tuned = new int[w.length];
+            for (int i = 0; i < w.length; i++) tuned[i] = (int) Math.round(w[i]);
+            return tuned;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java Tuner positions.epd|games.pgn [--out eval.weights] [--epochs N] [--threads N]");
+            System.exit(2);
+        }
+        File out = new File(Evaluation.WEIGHTS_FILE);
+        int epochs = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--out": out = new File(args[i + 1]); break;
+                case "--epochs": epochs = Integer.parseInt(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        long startNanos = System.nanoTime();
+        Tuner tuner = new Tuner();
+        File input = new File(args[0]);
+        if (input.getName().toLowerCase(Locale.ROOT).endsWith(".pgn")) {
+            tuner.loadPgn(input);
+        } else {
+            tuner.loadPositions(input);
+        }
+        System.err.printf(Locale.ROOT, "Loaded in %.1fs%n", (System.nanoTime() - startNanos) / 1e9);
+        if (tuner.size() == 0) {
+            System.err.println("No labelled positions in " + input);
+            System.exit(1);
+        }
+        int[] weights = tuner.tune(epochs, threads);
+        Evaluation.writeWeights(out, weights, "Tuned on " + tuner.size() + " positions from " + input.getName());
+        System.err.printf(Locale.ROOT, "Wrote %s in %.1fs%n", out, (System.nanoTime() - startNanos) / 1e9);
+    }
+}
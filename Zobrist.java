@@ -0,0 +1,111 @@
+/**
+ * 64-bit Zobrist keys for {@link ChessMain.ChessGame} positions.
+ *
+ * The key table comes from a fixed seed, so hashes are stable across runs and can be
+ * stored on disk. Two positions hash alike when they agree on placement, side to move,
+ * castling rights and a capturable en passant square. Move counters are ignored, so
+ * transpositions meet.
+ */
+public final class Zobrist {
+
+    private static final String PIECES = "PNBRQKpnbrqk";
+
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long[] CASTLING = new long[4]; // K, Q, k, q
+    static final long[] EN_PASSANT_FILE = new long[8];
+    static final long BLACK_TO_MOVE;
+
+    static {
+        long[] state = {0x9E3779B97F4A7C15L};
+        for (int p = 0; p < 12; p++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECE_SQUARE[p][sq] = next(state);
+            }
+        }
+        for (int i = 0; i < 4; i++) CASTLING[i] = next(state);
+        for (int i = 0; i < 8; i++) EN_PASSANT_FILE[i] = next(state);
+        BLACK_TO_MOVE = next(state);
+    }
+
+    private Zobrist() {}
+
+    // SplitMix64, so the table does not depend on java.util.Random's implementation
+    private static long next(long[] state) {
+        long z = (state[0] += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return The index of a piece in {@link #PIECE_SQUARE}.
+     */
+    static int pieceIndex(ChessMain.Piece p) {
+        // Called for every piece on every move, so no symbol() strings here
+        int kind = p instanceof ChessMain.Pawn ? 0
+                : p instanceof ChessMain.Knight ? 1
+                : p instanceof ChessMain.Bishop ? 2
+                : p instanceof ChessMain.Rook ? 3
+                : p instanceof ChessMain.Queen ? 4 : 5;
+        return p.color.equals("white") ? kind : kind + 6;
+    }
+
+    /**
+     * Computes the key of a position from scratch.
+     */
+    static long hash(ChessMain.ChessGame g) {
+        long h = 0;
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                ChessMain.Piece p = g.board[x][y];
+                if (p != null) {
+                    h ^= PIECE_SQUARE[pieceIndex(p)][x * 8 + y];
+                }
+            }
+        }
+        return h ^ stateKey(g);
+    }
+
+    /**
+     * The part of the key not tied to piece placement: castling rights, en passant file
+     * and side to move. Moves update a key by swapping this part out and back in.
+     */
+    static long stateKey(ChessMain.ChessGame g) {
+        long h = 0;
+        int castling = g.castlingMask();
+        for (int i = 0; i < 4; i++) {
+            if ((castling & (1 << i)) != 0) h ^= CASTLING[i];
+        }
+        if (g.enPassantTarget != null && canCaptureEnPassant(g)) {
+            h ^= EN_PASSANT_FILE[g.enPassantTarget[1]];
+        }
+        if (g.toMove.equals("black")) {
+            h ^= BLACK_TO_MOVE;
+        }
+        return h;
+    }
+
+    /**
+     * @return The key of the piece on square (x, y), or 0 if it is empty.
+     */
+    static long square(ChessMain.ChessGame g, int x, int y) {
+        ChessMain.Piece p = g.board[x][y];
+        return p == null ? 0 : PIECE_SQUARE[pieceIndex(p)][x * 8 + y];
+    }
+
+    /**
+     * The en passant square only distinguishes positions when a pawn can actually take on it.
+     */
+    private static boolean canCaptureEnPassant(ChessMain.ChessGame g) {
+        int x = g.enPassantTarget[0] + (g.toMove.equals("white") ? 1 : -1);
+        int y = g.enPassantTarget[1];
+        if (x < 0 || x > 7) return false;
+        for (int dy = -1; dy <= 1; dy += 2) {
+            int ny = y + dy;
+            if (ny < 0 || ny > 7) continue;
+            ChessMain.Piece p = g.board[x][ny];
+            if (p instanceof ChessMain.Pawn && p.color.equals(g.toMove)) return true;
+        }
+        return false;
+    }
+}
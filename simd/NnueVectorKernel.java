@@ -0,0 +1,75 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Nnue.Kernel} on the incubating Vector API, so the accumulator rows and the
+ * output use the widest SIMD registers the CPU has (SSE/AVX on x86, NEON on ARM).
+ *
+ * Kept out of the main source directory because it needs the incubator module to
+ * compile and run; Nnue finds it by name and falls back to scalar code without it:
+ * <pre>
+ *   javac --add-modules jdk.incubator.vector -cp . -d . simd/NnueVectorKernel.java
+ *   java --add-modules jdk.incubator.vector ChessMain
+ * </pre>
+ */
+final class NnueVectorKernel implements Nnue.Kernel {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Shorts that widen to exactly one preferred int vector
+    private static final VectorSpecies<Short> HALF_SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+
+    @Override
+    public void add(short[] acc, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(acc.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(acc, i);
+        }
+        for (; i < acc.length; i++) acc[i] += weights[offset + i];
+    }
+
+    @Override
+    public void subtract(short[] acc, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(acc.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(acc, i);
+        }
+        for (; i < acc.length; i++) acc[i] -= weights[offset + i];
+    }
+
+    @Override
+    public int output(short[] us, short[] them, short[] weights, int qa) {
+        int n = us.length;
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+        for (int bound = HALF_SHORTS.loopBound(n); i < bound; i += HALF_SHORTS.length()) {
+            sum = sum.add(clampedProduct(us, i, weights, i, qa))
+                     .add(clampedProduct(them, i, weights, n + i, qa));
+        }
+        int total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            total += Math.min(Math.max(us[i], 0), qa) * weights[i];
+            total += Math.min(Math.max(them[i], 0), qa) * weights[n + i];
+        }
+        return total;
+    }
+
+    private static IntVector clampedProduct(short[] acc, int i, short[] weights, int w, int qa) {
+        IntVector a = (IntVector) ShortVector.fromArray(HALF_SHORTS, acc, i).castShape(INTS, 0);
+        IntVector b = (IntVector) ShortVector.fromArray(HALF_SHORTS, weights, w).castShape(INTS, 0);
+        return a.max(0).min(qa).mul(b);
+    }
+
+    @Override
+    public String name() {
+        return "vector " + INTS.vectorBitSize() + "-bit";
+    }
+}